@@ -0,0 +1,521 @@
+package com.app.bubble;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read-only base vocabulary, memory-mapped straight from the APK.
+ * The file is produced at build time by the 'compileBaseDictionary' task (app/dictionary.gradle),
+ * so opening it costs no parsing and the word list never lands on the Java heap.
+ *
+ * Layout (big endian):
+ *   header     int magic, int version, int wordCount, int blockSize, int blockCount,
+ *              int hotCount, int maxWordLength, int dataOffset
+ *   blocks     blockCount x int, start of every block relative to dataOffset
+ *   hot table  hotCount x (char c1, char c2, HOT_SLOTS x int wordIndex), sorted by (c1, c2).
+ *              Most frequent words for every 1 and 2 char prefix (c2 == 0 for 1 char), -1 padded.
+ *   block max  blockCount x byte, highest word frequency of every block
+ *   data       wordCount x (byte shared, byte suffixLength, suffixLength x char, byte frequency)
+ *              Lower-case words in String order, front-coded against the previous word.
+ *              The first word of every block has shared == 0.
+ */
+public class BinaryDictionary {
+
+    public static final String ASSET_NAME = "base.dict";
+
+    private static final int MAGIC = 0x42444943; // "BDIC"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 32;
+    private static final int HOT_SLOTS = 8;
+    private static final int HOT_ENTRY_SIZE = 4 + HOT_SLOTS * 4;
+
+    private final ByteBuffer buffer;
+    private final int wordCount;
+    private final int blockSize;
+    private final int blockCount;
+    private final int hotCount;
+    private final int maxWordLength;
+    private final int blockTable;
+    private final int hotTable;
+    private final int blockMaxTable;
+    private final int dataOffset;
+
+    // Decoding buffer of the calling thread; any thread may read the dictionary
+    private final ThreadLocal<char[]> scratch = new ThreadLocal<char[]>() {
+        @Override
+        protected char[] initialValue() {
+            return new char[maxWordLength];
+        }
+    };
+
+    private BinaryDictionary(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported dictionary format");
+        }
+        wordCount = buffer.getInt(8);
+        blockSize = buffer.getInt(12);
+        blockCount = buffer.getInt(16);
+        hotCount = buffer.getInt(20);
+        maxWordLength = buffer.getInt(24);
+        dataOffset = buffer.getInt(28);
+        blockTable = HEADER_SIZE;
+        hotTable = blockTable + blockCount * 4;
+        blockMaxTable = hotTable + hotCount * HOT_ENTRY_SIZE;
+    }
+
+    /**
+     * Maps the bundled dictionary. Returns null if the asset is missing or unreadable,
+     * in which case predictions simply run on learned words only.
+     */
+    public static BinaryDictionary open(Context context) {
+        return open(context, ASSET_NAME);
+    }
+
+    /**
+     * Maps another bundled dictionary in the same format (e.g. of another language).
+     * Returns null if there is no such asset or it cannot be read.
+     */
+    public static BinaryDictionary open(Context context, String assetName) {
+        AssetFileDescriptor afd = null;
+        FileInputStream in = null;
+        try {
+            // Works because the asset is stored uncompressed (see noCompress in build.gradle)
+            afd = context.getAssets().openFd(assetName);
+            in = new FileInputStream(afd.getFileDescriptor());
+            FileChannel channel = in.getChannel();
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, afd.getStartOffset(), afd.getLength());
+            return new BinaryDictionary(mapped);
+        } catch (IOException e) {
+            // Not bundled for this language, or not in this format: run on learned words only
+            return null;
+        } finally {
+            // The mapping stays valid after the descriptor is closed
+            try {
+                if (in != null) in.close();
+                if (afd != null) afd.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    public int size() {
+        return wordCount;
+    }
+
+    public boolean contains(String word) {
+        return indexOf(word.toLowerCase()) >= 0;
+    }
+
+    /**
+     * Frequency class 1..255 of a word, 0 if it is not in the dictionary.
+     */
+    public int getFrequency(String word) {
+        int index = indexOf(word.toLowerCase());
+        return index < 0 ? 0 : frequencyAt(index);
+    }
+
+    /**
+     * Returns up to 'limit' words starting with the prefix, most frequent first.
+     */
+    public List<String> topWords(String prefix, int limit) {
+        List<String> results = new ArrayList<>();
+        if (prefix == null || prefix.isEmpty() || wordCount == 0) return results;
+        String key = prefix.toLowerCase();
+
+        if (key.length() <= 2) {
+            int entry = findHotEntry(key);
+            if (entry >= 0) {
+                for (int i = 0; i < HOT_SLOTS && results.size() < limit; i++) {
+                    int index = buffer.getInt(entry + 4 + i * 4);
+                    if (index < 0) break;
+                    results.add(wordAt(index));
+                }
+            }
+            return results;
+        }
+
+        return topWordsInRange(lowerBound(key), lowerBound(key + '\uffff'), limit);
+    }
+
+    /**
+     * Returns up to 'limit' words of the index range [from, to), most frequent first (the first
+     * ones on equal frequency). Whole blocks whose highest frequency cannot make the cut are skipped
+     * without being decoded.
+     */
+    public List<String> topWordsInRange(int from, int to, int limit) {
+        List<String> results = new ArrayList<>();
+        if (from >= to || limit <= 0) return results;
+        int firstBlock = (from + blockSize - 1) / blockSize;
+        int endBlock = to / blockSize;
+
+        // Every whole block holds a word at its highest frequency, so the 'limit'-th highest of
+        // those is a floor for the results
+        int[] floors = new int[limit];
+        int floorCount = 0;
+        for (int block = firstBlock; block < endBlock; block++) {
+            int max = blockMax(block);
+            if (floorCount == limit && max <= floors[limit - 1]) continue;
+            int at = floorCount < limit ? floorCount++ : limit - 1;
+            while (at > 0 && floors[at - 1] < max) {
+                floors[at] = floors[at - 1];
+                at--;
+            }
+            floors[at] = max;
+        }
+        int floor = floorCount == limit ? floors[limit - 1] : 0;
+
+        // Keep the best 'limit' indices by frequency while walking the range
+        int[] best = new int[limit];
+        int[] bestFreq = new int[limit];
+        int found = 0;
+        int i = from;
+        int pos = entryOffset(from);
+        while (i < to) {
+            if (i % blockSize == 0 && i + blockSize <= to) {
+                int max = blockMax(i / blockSize);
+                if (max < floor || (found == limit && max <= bestFreq[found - 1])) {
+                    i += blockSize;
+                    if (i < wordCount) pos = dataOffset + buffer.getInt(blockTable + (i / blockSize) * 4);
+                    continue;
+                }
+            }
+            int suffixLength = buffer.get(pos + 1) & 0xFF;
+            int freq = buffer.get(pos + 2 + suffixLength * 2) & 0xFF;
+            pos += 2 + suffixLength * 2 + 1;
+            int index = i++;
+            if (freq < floor || (found == limit && freq <= bestFreq[found - 1])) continue;
+            int at = found < limit ? found++ : found - 1;
+            while (at > 0 && bestFreq[at - 1] < freq) {
+                best[at] = best[at - 1];
+                bestFreq[at] = bestFreq[at - 1];
+                at--;
+            }
+            best[at] = index;
+            bestFreq[at] = freq;
+        }
+        for (int k = 0; k < found; k++) {
+            results.add(wordAt(best[k]));
+        }
+        return results;
+    }
+
+    private int blockMax(int block) {
+        return buffer.get(blockMaxTable + block) & 0xFF;
+    }
+
+    /**
+     * Index range {from, to} of the words starting with a case-folded prefix.
+     */
+    public int[] prefixRange(String key) {
+        return new int[] { lowerBound(key), lowerBound(key + '\uffff') };
+    }
+
+    /**
+     * Narrows the index range [from, to) of the words sharing a 'depth' char prefix to the words
+     * that continue it with 'c'. Returns the new range as {from, to}; it is empty when from == to.
+     * Lets a caller follow a prefix one typed char at a time.
+     */
+    public int[] narrow(int from, int to, int depth, char c) {
+        char[] word = scratch.get();
+        int low = charBound(from, to, depth, c, word);
+        int high = c == '\uffff' ? to : charBound(low, to, depth, (char) (c + 1), word);
+        return new int[] { low, high };
+    }
+
+    /**
+     * Frequency (1-255) of the word spelled by the 'length' char prefix of the range [from, to),
+     * as returned by narrow(), or 0 if the prefix itself is not a word.
+     */
+    public int prefixFrequency(int from, int to, int length) {
+        if (from >= to) return 0;
+        // Shorter words sort first, so the prefix word, if any, opens the range
+        char[] word = scratch.get();
+        return decodeAt(from, word) == length ? frequencyAt(from) : 0;
+    }
+
+    /**
+     * First index in [from, to) whose char at 'depth' is >= c (shorter words sort first).
+     * Block heads are stored whole, so they are binary searched first and only one block is decoded.
+     */
+    private int charBound(int from, int to, int depth, char c, char[] word) {
+        if (from >= to) return from;
+        // Last block starting inside the range whose head is still below the bound
+        int lo = (from + blockSize - 1) / blockSize;
+        int hi = (to - 1) / blockSize;
+        int start = from;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (headAtOrAbove(mid, depth, c)) {
+                hi = mid - 1;
+            } else {
+                start = mid * blockSize;
+                lo = mid + 1;
+            }
+        }
+
+        // The bound lies in [start, next block head]
+        int block = start / blockSize;
+        int end = Math.min(to, (block + 1) * blockSize);
+        int pos = dataOffset + buffer.getInt(blockTable + block * 4);
+        for (int i = block * blockSize; i < end; i++) {
+            int length = decodeInto(pos, word);
+            if (i >= start && length > depth && word[depth] >= c) return i;
+            pos += 2 + (buffer.get(pos + 1) & 0xFF) * 2 + 1;
+        }
+        return end;
+    }
+
+    private boolean headAtOrAbove(int block, int depth, char c) {
+        int pos = dataOffset + buffer.getInt(blockTable + block * 4);
+        int length = buffer.get(pos + 1) & 0xFF;
+        return length > depth && buffer.getChar(pos + 2 + depth * 2) >= c;
+    }
+
+    /**
+     * Collects every word at the smallest edit distance (<= maxDistance) from the input and
+     * returns that distance, or maxDistance + 1 if nothing is close enough.
+     * Walks the front-coded list in order: distance rows for the shared prefix are reused from the
+     * previous word, and once a prefix is too far, the blocks whose heads all share it are jumped
+     * over through the block table, so only the blocks at the edges of that subtree are read.
+     */
+    public int closest(String input, int maxDistance, List<String> out) {
+        String key = input.toLowerCase();
+        int cols = key.length() + 1;
+        int best = maxDistance;
+        if (best < 0 || wordCount == 0) return maxDistance + 1;
+
+        int[][] rows = new int[maxWordLength + 1][cols];
+        for (int j = 0; j < cols; j++) rows[0][j] = j;
+        char[] word = scratch.get();
+        int wordLength = 0;                  // Length of the last decoded word, held in 'word'
+
+        int computed = 0;                    // Rows valid for the prefix of the last decoded word
+        int prunedDepth = Integer.MAX_VALUE; // Words sharing this many chars are hopeless
+        int pos = dataOffset;
+
+        int i = 0;
+        while (i < wordCount) {
+            int stored = buffer.get(pos) & 0xFF;
+            int suffixLength = buffer.get(pos + 1) & 0xFF;
+            int next = pos + 2 + suffixLength * 2 + 1;
+            int length = stored + suffixLength;
+            // Block heads are stored whole: find what they share with the previous word
+            int shared = stored == 0 ? sharedPrefix(pos, word, wordLength) : stored;
+
+            if (shared >= prunedDepth) {
+                pos = next;
+                i++;
+                continue;
+            }
+            prunedDepth = Integer.MAX_VALUE;
+
+            for (int c = shared; c < length; c++) {
+                word[c] = buffer.getChar(pos + 2 + (c - stored) * 2);
+            }
+            wordLength = length;
+
+            int depth = Math.min(shared, computed);
+            boolean hopeless = false;
+            while (depth < length) {
+                int[] prev = rows[depth];
+                int[] cur = rows[depth + 1];
+                char wc = word[depth];
+                cur[0] = depth + 1;
+                int rowMin = cur[0];
+                for (int j = 1; j < cols; j++) {
+                    int cost = (wc == key.charAt(j - 1)) ? 0 : 1;
+                    int value = Math.min(Math.min(prev[j] + 1, cur[j - 1] + 1), prev[j - 1] + cost);
+                    cur[j] = value;
+                    if (value < rowMin) rowMin = value;
+                }
+                depth++;
+                if (rowMin > best) {
+                    hopeless = true;
+                    prunedDepth = depth;
+                    break;
+                }
+            }
+            computed = depth;
+
+            if (hopeless) {
+                // Skip to the last block whose head still has the hopeless prefix
+                int block = lastBlockWithPrefix(i / blockSize + 1, word, prunedDepth);
+                if (block >= 0) {
+                    i = block * blockSize;
+                    pos = dataOffset + buffer.getInt(blockTable + block * 4);
+                    continue;
+                }
+            } else {
+                int distance = rows[length][cols - 1];
+                if (distance <= best) {
+                    if (distance < best) {
+                        best = distance;
+                        out.clear();
+                    }
+                    out.add(new String(word, 0, length));
+                }
+            }
+            pos = next;
+            i++;
+        }
+        return out.isEmpty() ? maxDistance + 1 : best;
+    }
+
+    /**
+     * Number of leading chars the whole word stored at 'pos' shares with word[0, length).
+     */
+    private int sharedPrefix(int pos, char[] word, int length) {
+        int n = Math.min(length, buffer.get(pos + 1) & 0xFF);
+        int shared = 0;
+        while (shared < n && buffer.getChar(pos + 2 + shared * 2) == word[shared]) shared++;
+        return shared;
+    }
+
+    /**
+     * Last block from 'from' on whose head starts with prefix[0, length), or -1 if the head of
+     * 'from' does not. The words with a prefix are contiguous, so such heads are too.
+     */
+    private int lastBlockWithPrefix(int from, char[] prefix, int length) {
+        int found = -1;
+        int lo = from;
+        int hi = blockCount - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int pos = dataOffset + buffer.getInt(blockTable + mid * 4);
+            if (sharedPrefix(pos, prefix, length) == length) {
+                found = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    // --- Decoding ---
+
+    private int indexOf(String key) {
+        int index = lowerBound(key);
+        if (index < wordCount && wordAt(index).equals(key)) return index;
+        return -1;
+    }
+
+    /**
+     * Index of the first word that is >= key.
+     */
+    private int lowerBound(String key) {
+        // Last block whose head is < key
+        int lo = 0;
+        int hi = blockCount - 1;
+        int block = 0;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compareHead(mid, key) < 0) {
+                block = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+
+        int index = block * blockSize;
+        int end = Math.min(index + blockSize, wordCount);
+        char[] word = scratch.get();
+        int pos = dataOffset + buffer.getInt(blockTable + block * 4);
+        for (; index < end; index++) {
+            int length = decodeInto(pos, word);
+            if (compare(word, length, key) >= 0) return index;
+            pos += 2 + (buffer.get(pos + 1) & 0xFF) * 2 + 1;
+        }
+        return index;
+    }
+
+    private String wordAt(int index) {
+        char[] word = scratch.get();
+        int length = decodeAt(index, word);
+        return new String(word, 0, length);
+    }
+
+    /**
+     * Decodes word 'index' into 'word' (from the start of its block) and returns its length.
+     */
+    private int decodeAt(int index, char[] word) {
+        int block = index / blockSize;
+        int pos = dataOffset + buffer.getInt(blockTable + block * 4);
+        int length = 0;
+        for (int i = block * blockSize; i <= index; i++) {
+            length = decodeInto(pos, word);
+            pos += 2 + (buffer.get(pos + 1) & 0xFF) * 2 + 1;
+        }
+        return length;
+    }
+
+    private int frequencyAt(int index) {
+        int pos = entryOffset(index);
+        return buffer.get(pos + 2 + (buffer.get(pos + 1) & 0xFF) * 2) & 0xFF;
+    }
+
+    private int entryOffset(int index) {
+        int block = index / blockSize;
+        int pos = dataOffset + buffer.getInt(blockTable + block * 4);
+        for (int i = block * blockSize; i < index; i++) {
+            pos += 2 + (buffer.get(pos + 1) & 0xFF) * 2 + 1;
+        }
+        return pos;
+    }
+
+    /**
+     * Applies the entry at 'pos' on top of the previous word held in 'word'. Returns the new length.
+     */
+    private int decodeInto(int pos, char[] word) {
+        int shared = buffer.get(pos) & 0xFF;
+        int suffixLength = buffer.get(pos + 1) & 0xFF;
+        for (int c = 0; c < suffixLength; c++) {
+            word[shared + c] = buffer.getChar(pos + 2 + c * 2);
+        }
+        return shared + suffixLength;
+    }
+
+    private int compareHead(int block, String key) {
+        int pos = dataOffset + buffer.getInt(blockTable + block * 4);
+        int length = buffer.get(pos + 1) & 0xFF;
+        int n = Math.min(length, key.length());
+        for (int i = 0; i < n; i++) {
+            char c = buffer.getChar(pos + 2 + i * 2);
+            if (c != key.charAt(i)) return c - key.charAt(i);
+        }
+        return length - key.length();
+    }
+
+    private static int compare(char[] word, int length, String key) {
+        int n = Math.min(length, key.length());
+        for (int i = 0; i < n; i++) {
+            if (word[i] != key.charAt(i)) return word[i] - key.charAt(i);
+        }
+        return length - key.length();
+    }
+
+    private int findHotEntry(String key) {
+        long target = ((long) key.charAt(0) << 16) | (key.length() > 1 ? key.charAt(1) : 0);
+        int lo = 0;
+        int hi = hotCount - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int entry = hotTable + mid * HOT_ENTRY_SIZE;
+            long value = ((long) buffer.getChar(entry) << 16) | buffer.getChar(entry + 2);
+            if (value < target) lo = mid + 1;
+            else if (value > target) hi = mid - 1;
+            else return entry;
+        }
+        return -1;
+    }
+}
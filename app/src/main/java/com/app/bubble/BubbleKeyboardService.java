@@ -9,6 +9,7 @@ import android.os.Handler;
 import android.os.Looper;
 import android.view.KeyEvent;
 import android.view.LayoutInflater;
+import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.inputmethod.InputConnection;
@@ -18,12 +19,24 @@ import android.widget.LinearLayout;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Future;
 
 /**
  * The core Service handling the Modern Keyboard logic.
  * Manages Switching layers, Predictions, Emoji interactions, Professional Clipboard, Translation, and OCR Tools.
  * UPDATED: Fixed Clipboard closing Translation Panel bug.
+ * UPDATED: Suggestions, auto-correct and learning run on a PredictionWorker, off the main thread.
+ * UPDATED: After a space the candidate strip leads with phrase completions from the typing history.
+ * UPDATED: Releases the prediction models of inactive languages on memory pressure (onTrimMemory).
+ * UPDATED: The prediction model is loaded in the background from onCreate; until it is ready the
+ * candidate strip stays empty instead of queueing behind the load.
+ * NEW: Glide typing: a path drawn across the letter keys is decoded into a word (GestureDecoder) and
+ * the runner-up words are offered in the candidate strip.
+ * NEW: Transliteration mode (toolbar toggle): Latin keys are typed as native script (Transliterator),
+ * composed in place, with the other spellings and the raw Latin in the candidate strip.
  */
 public class BubbleKeyboardService extends InputMethodService implements KeyboardView.OnKeyboardActionListener {
 
@@ -50,6 +63,7 @@ public class BubbleKeyboardService extends InputMethodService implements Keyboar
     private ImageButton btnClipboard;
     private ImageButton btnKeyboardSwitch;
     private ImageButton btnTranslate;
+    private ImageButton btnTransliterate;
     private ImageButton btnBubbleLauncher; 
     private ImageButton btnOcrCopy;       
 
@@ -62,6 +76,7 @@ public class BubbleKeyboardService extends InputMethodService implements Keyboar
     private boolean isEmojiVisible = false;
     private StringBuilder currentWord = new StringBuilder(); 
     private String lastCommittedWord = null; 
+    private String secondLastCommittedWord = null; // Word before lastCommittedWord, for trigram predictions
 
     // Auto-Correct Undo State
     private boolean justAutoCorrected = false;
@@ -69,6 +84,29 @@ public class BubbleKeyboardService extends InputMethodService implements Keyboar
     private String lastCorrectedWord = "";
     private boolean ignoreNextCorrection = false;
 
+    // Background Predictions
+    private PredictionWorker predictionWorker;
+    private Future<PredictionEngine> predictionReady; // Done once the model is loaded
+    private int keySequence = 0; // Bumped on every key, so late results can tell they are stale
+    private String speculativeWord = null; // Word the cached correction below was computed for
+    private String speculativeCorrection = null;
+
+    // Glide Typing
+    private static final float GESTURE_START_KEYS = 0.75f; // Travel, in key widths, that turns a touch into a gesture
+    private static final int GESTURE_CANDIDATES = 5;
+    private GestureDecoder gestureDecoder;
+    private float[] gestureX = new float[256];
+    private float[] gestureY = new float[256];
+    private int gesturePoints = 0;
+    private boolean gestureTracking = false; // Touch started on a letter key
+    private boolean gestureActive = false; // Travelled far enough: KeyboardView no longer sees the touch
+
+    // Transliteration
+    private static final int TRANSLITERATION_CANDIDATES = 5;
+    private boolean isTransliterating = false;
+    private Transliterator.Composition transliteration; // Latin of the word being typed, null when off
+    private List<String> transliterationCandidates = new ArrayList<>();
+
     // Long Press Logic 
     private Handler longPressHandler = new Handler(Looper.getMainLooper());
     private boolean isSpaceLongPressed = false;
@@ -85,6 +123,42 @@ public class BubbleKeyboardService extends InputMethodService implements Keyboar
         }
     };
 
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        predictionWorker = new PredictionWorker(this);
+        // Cold start: read the learned model from disk now, not on the first keystroke
+        predictionReady = predictionWorker.warmUp(new Runnable() {
+            @Override
+            public void run() {
+                updateCandidates(currentWord.toString());
+            }
+        });
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        // Models of other languages are reloaded from disk when they are typed in again
+        if (level == TRIM_MEMORY_RUNNING_LOW || level == TRIM_MEMORY_RUNNING_CRITICAL
+                || level >= TRIM_MEMORY_BACKGROUND) {
+            predictionWorker.trimMemory();
+        }
+    }
+
+    @Override
+    public void onFinishInput() {
+        super.onFinishInput();
+        // The editor keeps the composing text as it is
+        if (transliteration != null) transliteration.clear();
+    }
+
+    @Override
+    public void onDestroy() {
+        predictionWorker.shutdown();
+        super.onDestroy();
+    }
+
     @Override
     public View onCreateInputView() {
         mainLayout = new LinearLayout(this);
@@ -140,6 +214,8 @@ public class BubbleKeyboardService extends InputMethodService implements Keyboar
         kv.setKeyboard(keyboardQwerty);
         kv.setOnKeyboardActionListener(this);
         kv.setPreviewEnabled(false); 
+        gestureDecoder = GestureDecoder.forKeyboard(keyboardQwerty);
+        kv.setOnTouchListener((v, event) -> onKeyboardTouch(event));
         mainLayout.addView(kv);
 
         // 4. Setup Emoji Palette
@@ -174,8 +250,10 @@ public class BubbleKeyboardService extends InputMethodService implements Keyboar
                     InputConnection ic = getCurrentInputConnection();
                     if (ic != null) {
                         ic.commitText(text, 1);
-                        PredictionEngine.getInstance(BubbleKeyboardService.this).learnWord(text);
-                        lastCommittedWord = text.trim(); 
+                        // The clip was learned, word pairs included, when it was copied
+                        predictionWorker.endPhrase();
+                        String[] words = text.trim().split("\\s+");
+                        rememberCommittedWord(words[words.length - 1]);
                     }
                     toggleClipboardPalette(); 
                     updateCandidates("");
@@ -206,6 +284,9 @@ public class BubbleKeyboardService extends InputMethodService implements Keyboar
         
         btnTranslate = candidateView.findViewById(R.id.btn_translate);
         if (btnTranslate != null) btnTranslate.setOnClickListener(v -> toggleTranslationMode());
+
+        btnTransliterate = candidateView.findViewById(R.id.btn_transliterate);
+        if (btnTransliterate != null) btnTransliterate.setOnClickListener(v -> toggleTransliteration());
         
         btnBubbleLauncher = candidateView.findViewById(R.id.btn_bubble_launcher);
         if (btnBubbleLauncher != null) {
@@ -243,6 +324,7 @@ public class BubbleKeyboardService extends InputMethodService implements Keyboar
     public void onKey(int primaryCode, int[] keyCodes) {
         InputConnection ic = getCurrentInputConnection();
         if (ic == null) return;
+        keySequence++;
 
         // Icon Visibility
         // Logic: Hide toolbar when typing, Show when space/dot/empty
@@ -258,6 +340,8 @@ public class BubbleKeyboardService extends InputMethodService implements Keyboar
             if (toolbarContainer != null) toolbarContainer.setVisibility(View.VISIBLE);
         }
 
+        if (isTransliterating && !isTranslationMode && handleTransliterationKey(ic, primaryCode)) return;
+
         // --- DELETE KEY LOGIC ---
         if (primaryCode == Keyboard.KEYCODE_DELETE) {
             if (isTranslationMode) {
@@ -297,8 +381,9 @@ public class BubbleKeyboardService extends InputMethodService implements Keyboar
             if (isTranslationMode) {
                 translationUiManager.performTranslation(translationBuffer.toString());
             } else {
-                PredictionEngine.getInstance(this).learnWord(currentWord.toString());
-                lastCommittedWord = currentWord.toString();
+                predictionWorker.learn(currentWord.toString(), null, null);
+                predictionWorker.endPhrase();
+                rememberCommittedWord(currentWord.toString());
                 currentWord.setLength(0); 
                 updateCandidates("");
                 ic.sendKeyEvent(new KeyEvent(KeyEvent.ACTION_DOWN, KeyEvent.KEYCODE_ENTER));
@@ -331,9 +416,12 @@ public class BubbleKeyboardService extends InputMethodService implements Keyboar
                 } else {
                     String typo = currentWord.toString();
                     boolean correctionApplied = false;
+                    boolean mayCorrect = !ignoreNextCorrection && typo.length() > 1;
+                    // The worker usually computed the correction while the word was being typed
+                    boolean correctionKnown = typo.equals(speculativeWord);
                     
-                    if (!ignoreNextCorrection && typo.length() > 1) {
-                        String correction = PredictionEngine.getInstance(this).getBestMatch(typo);
+                    if (mayCorrect && correctionKnown) {
+                        String correction = speculativeCorrection;
                         
                         if (correction != null && !correction.equals(typo)) {
                             lastOriginalWord = typo;
@@ -357,13 +445,23 @@ public class BubbleKeyboardService extends InputMethodService implements Keyboar
                     ic.commitText(" ", 1);
                     
                     String justTyped = currentWord.toString();
-                    PredictionEngine.getInstance(this).learnWord(justTyped);
                     
-                    if (lastCommittedWord != null && !lastCommittedWord.isEmpty()) {
-                        PredictionEngine.getInstance(this).learnNextWord(lastCommittedWord, justTyped);
-                    }
+                    // Not ready yet: the worker looks it up before learning, and we apply it
+                    // only if nothing was typed in the meantime
+                    final int sequence = keySequence;
+                    final String beforePrevious = secondLastCommittedWord;
+                    final String previous = lastCommittedWord;
+                    predictionWorker.commitWord(justTyped, beforePrevious, previous,
+                            mayCorrect && !correctionKnown,
+                            (typed, correction) -> {
+                                if (correction == null) return;
+                                // The worker learns whichever of the two stays on screen
+                                boolean applied = applyLateCorrection(typed, correction, sequence);
+                                predictionWorker.settleCorrection(typed, correction, beforePrevious, previous,
+                                        applied);
+                            });
                     
-                    lastCommittedWord = justTyped;
+                    rememberCommittedWord(justTyped);
                     currentWord.setLength(0); 
                     updateCandidates("");
                 }
@@ -388,8 +486,9 @@ public class BubbleKeyboardService extends InputMethodService implements Keyboar
                 currentWord.append(code);
                 updateCandidates(currentWord.toString());
             } else {
-                PredictionEngine.getInstance(this).learnWord(currentWord.toString());
-                lastCommittedWord = currentWord.toString();
+                predictionWorker.learn(currentWord.toString(), null, null);
+                predictionWorker.endPhrase();
+                rememberCommittedWord(currentWord.toString());
                 currentWord.setLength(0);
                 updateCandidates("");
             }
@@ -410,6 +509,217 @@ public class BubbleKeyboardService extends InputMethodService implements Keyboar
         }
     }
 
+    // =========================================================
+    // TRANSLITERATION
+    // =========================================================
+
+    private void toggleTransliteration() {
+        InputConnection ic = getCurrentInputConnection();
+        if (isTransliterating) {
+            if (ic != null && !transliteration.isEmpty()) commitTransliteration(ic, bestTransliteration(), false);
+            isTransliterating = false;
+            transliteration = null;
+        } else {
+            // Type in the active language if it has a scheme, otherwise in Malayalam
+            Transliterator transliterator = Transliterator.forLanguage(PredictionEngine.getActiveLanguage());
+            if (transliterator == null) transliterator = Transliterator.forLanguage("ml");
+            if (currentWord.length() > 0) {
+                predictionWorker.learn(currentWord.toString(), secondLastCommittedWord, lastCommittedWord);
+                rememberCommittedWord(currentWord.toString());
+                currentWord.setLength(0);
+            }
+            transliteration = transliterator.compose();
+            isTransliterating = true;
+
+            String name = LanguageUtils.LANGUAGE_NAMES[LanguageUtils.getIndexForCode(transliterator.getLanguage())];
+            Toast.makeText(this, "Typing in " + name, Toast.LENGTH_SHORT).show();
+        }
+        if (btnTransliterate != null) btnTransliterate.setAlpha(isTransliterating ? 1f : 0.5f);
+        updateCandidates("");
+    }
+
+    /**
+     * Letters extend the word being composed and Backspace shortens it. Any other key first types
+     * the word out; Space is then consumed (it typed the word with a space after it).
+     * Returns true if the key was handled here.
+     */
+    private boolean handleTransliterationKey(InputConnection ic, int primaryCode) {
+        if (primaryCode < 128 && Character.isLetter(primaryCode)) {
+            char c = (char) primaryCode;
+            transliteration.append(isCaps ? Character.toUpperCase(c) : c);
+            showTransliteration(ic);
+            return true;
+        }
+        if (transliteration.isEmpty() || primaryCode == Keyboard.KEYCODE_SHIFT) return false;
+        if (primaryCode == Keyboard.KEYCODE_DELETE) {
+            transliteration.backspace();
+            showTransliteration(ic);
+            return true;
+        }
+        boolean space = primaryCode == 32;
+        if (space && isSpaceLongPressed) return false;
+        commitTransliteration(ic, bestTransliteration(), space);
+        return space;
+    }
+
+    /**
+     * Shows the best spelling as composing text and all of them, plus the Latin, in the strip.
+     */
+    private void showTransliteration(InputConnection ic) {
+        if (transliteration.isEmpty()) {
+            transliterationCandidates = new ArrayList<>();
+            ic.setComposingText("", 1);
+            updateCandidates("");
+            return;
+        }
+        transliterationCandidates = transliteration.getCandidates(TRANSLITERATION_CANDIDATES);
+        ic.setComposingText(bestTransliteration(), 1);
+
+        List<String> strip = new ArrayList<>(transliterationCandidates);
+        strip.add(transliteration.getLatin()); // The word as typed, e.g. an English name
+        showCandidates(strip);
+    }
+
+    private String bestTransliteration() {
+        return transliterationCandidates.isEmpty() ? transliteration.getLatin() : transliterationCandidates.get(0);
+    }
+
+    /**
+     * Replaces the composing text with 'word' and learns it like a word finished with Space.
+     */
+    private void commitTransliteration(InputConnection ic, String word, boolean withSpace) {
+        ic.commitText(withSpace ? word + " " : word, 1);
+        predictionWorker.commitWord(word, secondLastCommittedWord, lastCommittedWord, false, null);
+        rememberCommittedWord(word);
+        transliteration.clear();
+        transliterationCandidates = new ArrayList<>();
+        updateCandidates("");
+    }
+
+    // =========================================================
+    // GLIDE TYPING
+    // =========================================================
+
+    /**
+     * Follows touches that start on a letter key. Once one travels far enough it becomes a gesture:
+     * KeyboardView gets a cancel (so no key is typed) and the path is decoded on release.
+     * Returns true while the gesture consumes the events.
+     */
+    private boolean onKeyboardTouch(MotionEvent event) {
+        // Gestures decode English words: not while transliterating
+        if (gestureDecoder == null || kv.getKeyboard() != keyboardQwerty || isTransliterating) return false;
+        // Keys are laid out inside the view's padding
+        float left = kv.getPaddingLeft();
+        float top = kv.getPaddingTop();
+        float x = event.getX() - left;
+        float y = event.getY() - top;
+
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                gesturePoints = 0;
+                gestureActive = false;
+                gestureTracking = gestureDecoder.isOnLetter(x, y);
+                if (gestureTracking) addGesturePoint(x, y);
+                return false;
+
+            case MotionEvent.ACTION_MOVE:
+                if (!gestureTracking) return false;
+                for (int i = 0; i < event.getHistorySize(); i++) {
+                    addGesturePoint(event.getHistoricalX(i) - left, event.getHistoricalY(i) - top);
+                }
+                addGesturePoint(x, y);
+                if (!gestureActive && Math.hypot(x - gestureX[0], y - gestureY[0])
+                        > GESTURE_START_KEYS * gestureDecoder.getKeyWidth()) {
+                    gestureActive = true;
+                    MotionEvent cancel = MotionEvent.obtain(event);
+                    cancel.setAction(MotionEvent.ACTION_CANCEL);
+                    kv.onTouchEvent(cancel);
+                    cancel.recycle();
+                }
+                return gestureActive;
+
+            case MotionEvent.ACTION_UP:
+                boolean wasGesture = gestureActive;
+                gestureTracking = false;
+                gestureActive = false;
+                if (!wasGesture) return false;
+                addGesturePoint(x, y);
+                decodeGesture();
+                return true;
+
+            case MotionEvent.ACTION_POINTER_DOWN:
+            case MotionEvent.ACTION_CANCEL:
+                // A second finger or an interrupted touch is not a gesture
+                boolean consumed = gestureActive;
+                gestureTracking = false;
+                gestureActive = false;
+                return consumed;
+
+            default:
+                return gestureActive;
+        }
+    }
+
+    private void addGesturePoint(float x, float y) {
+        if (gesturePoints == gestureX.length) {
+            gestureX = Arrays.copyOf(gestureX, gesturePoints * 2);
+            gestureY = Arrays.copyOf(gestureY, gesturePoints * 2);
+        }
+        gestureX[gesturePoints] = x;
+        gestureY[gesturePoints] = y;
+        gesturePoints++;
+    }
+
+    private void decodeGesture() {
+        keySequence++;
+        final int sequence = keySequence;
+        float[] xs = Arrays.copyOf(gestureX, gesturePoints);
+        float[] ys = Arrays.copyOf(gestureY, gesturePoints);
+        predictionWorker.decodeGesture(gestureDecoder, xs, ys, xs.length, GESTURE_CANDIDATES, words -> {
+            // Dropped if the user typed on meanwhile
+            if (sequence == keySequence && !words.isEmpty()) commitGestureWord(words);
+        });
+    }
+
+    /**
+     * Types the best decoded word as the current word (a candidate tap still replaces it) and
+     * offers the others in the candidate strip.
+     */
+    private void commitGestureWord(List<String> words) {
+        InputConnection ic = getCurrentInputConnection();
+        if (ic == null) return;
+        String word = isCaps ? words.get(0).toUpperCase() : words.get(0);
+
+        if (isTranslationMode) {
+            int length = translationBuffer.length();
+            if (length > 0 && !Character.isWhitespace(translationBuffer.charAt(length - 1))) {
+                translationBuffer.append(' ');
+            }
+            translationBuffer.append(word);
+            translationUiManager.updateInputPreview(translationBuffer.toString());
+            return;
+        }
+
+        if (currentWord.length() > 0) {
+            // The word before (glided or typed) is finished as Space would, minus the auto-correct
+            String previous = currentWord.toString();
+            ic.commitText(" ", 1);
+            predictionWorker.commitWord(previous, secondLastCommittedWord, lastCommittedWord, false, null);
+            rememberCommittedWord(previous);
+        }
+
+        CharSequence before = ic.getTextBeforeCursor(1, 0);
+        boolean needsSpace = before != null && before.length() > 0 && !Character.isWhitespace(before.charAt(0));
+        ic.commitText(needsSpace ? " " + word : word, 1);
+
+        currentWord.setLength(0);
+        currentWord.append(word);
+        justAutoCorrected = false;
+        ignoreNextCorrection = true; // The decoder already chose among the close words
+        if (toolbarContainer != null) toolbarContainer.setVisibility(View.GONE);
+        showCandidates(words);
+    }
+
     private void toggleEmojiPalette() {
         if (emojiPaletteView.getVisibility() == View.GONE) {
             kv.setVisibility(View.GONE);
@@ -501,22 +811,69 @@ public class BubbleKeyboardService extends InputMethodService implements Keyboar
         }
     }
 
+    private void rememberCommittedWord(String word) {
+        secondLastCommittedWord = lastCommittedWord;
+        lastCommittedWord = word;
+    }
+
+    /**
+     * Replaces 'typo' with its correction if nothing was typed since. Returns true if it did.
+     */
+    private boolean applyLateCorrection(String typo, String correction, int sequence) {
+        if (sequence != keySequence || isTranslationMode) return false; // User kept typing
+        InputConnection ic = getCurrentInputConnection();
+        if (ic == null) return false;
+
+        CharSequence before = ic.getTextBeforeCursor(typo.length() + 1, 0);
+        if (before == null || !before.toString().equals(typo + " ")) return false;
+
+        ic.deleteSurroundingText(typo.length() + 1, 0);
+        ic.commitText(correction + " ", 1);
+
+        lastOriginalWord = typo;
+        lastCorrectedWord = correction;
+        justAutoCorrected = true;
+        lastCommittedWord = correction;
+        updateCandidates("");
+        return true;
+    }
+
+    /**
+     * True once the model has loaded. False while it loads, and for good if the load failed: the
+     * keyboard then types without suggestions.
+     */
+    private boolean isPredictionReady() {
+        if (!predictionReady.isDone()) return false;
+        try {
+            predictionReady.get();
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
     private void updateCandidates(String wordBeingTyped) {
         if (candidateContainer == null) return;
-        
-        candidateContainer.removeAllViews();
-        List<String> suggestions;
-
-        if (wordBeingTyped.isEmpty()) {
-            if (lastCommittedWord != null) {
-                suggestions = PredictionEngine.getInstance(this).getNextWordSuggestions(lastCommittedWord);
-            } else {
-                suggestions = PredictionEngine.getInstance(this).getSuggestions(""); 
-            }
-        } else {
-            suggestions = PredictionEngine.getInstance(this).getSuggestions(wordBeingTyped);
+        if (!isPredictionReady()) {
+            // Still loading (an empty strip now, filled in by the warm-up callback) or failed to load
+            candidateContainer.removeAllViews();
+            return;
         }
 
+        predictionWorker.requestPredictions(wordBeingTyped, secondLastCommittedWord, lastCommittedWord,
+                (word, suggestions, correction) -> {
+                    // A result for a word the user has already moved past is useless
+                    if (!word.equals(currentWord.toString())) return;
+                    if (transliteration != null && !transliteration.isEmpty()) return; // Strip shows spellings
+                    speculativeWord = word;
+                    speculativeCorrection = correction;
+                    showCandidates(suggestions);
+                });
+    }
+
+    private void showCandidates(List<String> suggestions) {
+        candidateContainer.removeAllViews();
+
         for (final String word : suggestions) {
             TextView tv = new TextView(this);
             tv.setText(word);
@@ -527,16 +884,19 @@ public class BubbleKeyboardService extends InputMethodService implements Keyboar
             tv.setOnClickListener(v -> {
                 InputConnection ic = getCurrentInputConnection();
                 if (ic != null) {
+                    keySequence++;
                     if (currentWord.length() > 0) {
                         ic.deleteSurroundingText(currentWord.length(), 0);
                     }
                     ic.commitText(word + " ", 1);
-                    PredictionEngine.getInstance(this).learnWord(word);
-                    if (lastCommittedWord != null) {
-                        PredictionEngine.getInstance(this).learnNextWord(lastCommittedWord, word);
+                    // A phrase completion is learned word by word, like typed text
+                    for (String part : word.split(" ")) {
+                        predictionWorker.learn(part, secondLastCommittedWord, lastCommittedWord);
+                        rememberCommittedWord(part);
                     }
-                    lastCommittedWord = word;
                     currentWord.setLength(0);
+                    // A spelling tap types the composed word (commitText replaced the composing text)
+                    if (transliteration != null) transliteration.clear();
                     updateCandidates("");
                 }
             });
@@ -4,16 +4,21 @@ import android.content.ClipData;
 import android.content.ClipboardManager;
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.os.Process;
 import android.text.TextUtils;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Manages clipboard history for the custom keyboard.
  * Stores the last 10 copied items.
  * UPDATED: Supports Delete, Undo, Ghost Item Fix, and Background Learning (Crash Fix).
+ * UPDATED: Copied text is tokenized in one streaming pass (WordTokenizer, any script) and learned
+ * with its word pairs on a single low-priority thread (PredictionEngine.learnText).
  */
 public class ClipboardManagerHelper {
 
@@ -31,6 +36,9 @@ public class ClipboardManagerHelper {
     private static final int MAX_HISTORY_SIZE = 10;
     private static final String DELIMITER = "#####"; 
 
+    // One background thread for learning: clips are processed in order, never in parallel
+    private final ExecutorService learningExecutor = Executors.newSingleThreadExecutor();
+
     private ClipboardManagerHelper(Context context) {
         this.mContext = context;
         systemClipboard = (ClipboardManager) context.getSystemService(Context.CLIPBOARD_SERVICE);
@@ -80,6 +88,9 @@ public class ClipboardManagerHelper {
         // Reset the ignored item since a new copy action happened
         lastDeletedText = null;
 
+        // Re-syncing the clip already on top must not learn it again
+        boolean isNewClip = clipHistory.isEmpty() || !clipHistory.get(0).equals(text);
+
         // 1. Manage History List (Main Thread - needs to be instant)
         if (clipHistory.contains(text)) {
             clipHistory.remove(text);
@@ -92,28 +103,20 @@ public class ClipboardManagerHelper {
 
         saveHistory();
 
+        if (!isNewClip) return;
+
         // 2. FIX: Learn Vocabulary in Background (Prevents Crash on Large Copy)
-        new Thread(new Runnable() {
+        learningExecutor.execute(new Runnable() {
             @Override
             public void run() {
-                // Split sentence into words by whitespace
-                String[] words = text.split("\\s+");
-                List<String> validWords = new ArrayList<>();
-                
-                for (String word : words) {
-                    if (word.length() > 1) {
-                        // Regex to remove non-alphanumeric (keep simple logic)
-                        String cleanWord = word.replaceAll("[^a-zA-Z0-9]", "");
-                        if (!cleanWord.isEmpty()) {
-                            validWords.add(cleanWord);
-                        }
-                    }
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                try {
+                    PredictionEngine.forText(mContext, text).learnText(text);
+                } catch (IllegalStateException e) {
+                    e.printStackTrace(); // Model failed to load: the copy is simply not learned
                 }
-                
-                // Batch learn all collected words (Single Disk Write)
-                PredictionEngine.getInstance(mContext).learnWordsBatch(validWords);
             }
-        }).start();
+        });
     }
 
     /**
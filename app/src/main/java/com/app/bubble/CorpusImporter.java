@@ -0,0 +1,145 @@
+package com.app.bubble;
+
+import android.content.Context;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Seeds the prediction model from a large local text file (a chat export, a book...) in one go,
+ * instead of waiting for the words to be typed.
+ * The UTF-8 file is memory-mapped and split at whitespace into a few pieces per worker thread, which
+ * are decoded, tokenized (WordTokenizer) and counted (TextStatistics) in parallel on a ForkJoinPool.
+ * Partial counts are merged up the task tree, cut down to the engine's vocabulary budget and
+ * handed to PredictionEngine as a single merge (one model version, one journal record).
+ * Blocking: call from a background thread.
+ */
+public class CorpusImporter {
+
+    // Pieces per worker thread: enough to balance the load, few enough that merging stays cheap
+    private static final int TASKS_PER_THREAD = 4;
+    // Smallest piece worth a task of its own
+    private static final int MIN_CHUNK_BYTES = 256 * 1024;
+    // Bounds of every partial count, so memory per worker stays fixed
+    private static final int PARTIAL_MAX_WORDS = 65536;
+    private static final int PARTIAL_MAX_BIGRAMS = 262144;
+    // Word pairs kept per vocabulary word
+    private static final int BIGRAMS_PER_WORD = 4;
+    // Beginning of the file used to tell its language
+    private static final int SAMPLE_BYTES = 4096;
+    // Distance searched for whitespace to split at
+    private static final int MAX_SPLIT_SEARCH = 64 * 1024;
+    private static final int TOKEN_BATCH = 256;
+
+    /**
+     * Counts the whole file and merges the result into the engine of the file's language.
+     * Returns what was merged.
+     */
+    public static TextStatistics importCorpus(Context context, FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE) throw new IOException("Corpus larger than 2 GB");
+        if (size == 0) return new TextStatistics();
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+        CharSequence sample = decode(buffer, 0, (int) Math.min(size, SAMPLE_BYTES));
+        PredictionEngine engine = PredictionEngine.forText(context, sample);
+
+        TextStatistics counted;
+        ForkJoinPool pool = new ForkJoinPool();
+        try {
+            int chunkBytes = (int) Math.max(MIN_CHUNK_BYTES, size / (pool.getParallelism() * TASKS_PER_THREAD));
+            counted = pool.invoke(new CountTask(buffer, 0, (int) size, chunkBytes));
+        } finally {
+            pool.shutdown();
+        }
+
+        int maxWords = engine.getMaxVocabulary();
+        TextStatistics top = counted.mostFrequent(maxWords, maxWords * BIGRAMS_PER_WORD);
+        engine.learnStatistics(top);
+        return top;
+    }
+
+    /**
+     * Counts the bytes [from, to): directly when small, otherwise by splitting in two.
+     */
+    private static final class CountTask extends RecursiveTask<TextStatistics> {
+        private final ByteBuffer buffer;
+        private final int from;
+        private final int to;
+        private final int chunkBytes;
+
+        CountTask(ByteBuffer buffer, int from, int to, int chunkBytes) {
+            this.buffer = buffer;
+            this.from = from;
+            this.to = to;
+            this.chunkBytes = chunkBytes;
+        }
+
+        @Override
+        protected TextStatistics compute() {
+            int middle = to - from > chunkBytes ? splitPoint(buffer, from + (to - from) / 2, to) : to;
+            if (middle >= to) return count();
+
+            CountTask left = new CountTask(buffer, from, middle, chunkBytes);
+            CountTask right = new CountTask(buffer, middle, to, chunkBytes);
+            left.fork();
+            TextStatistics rightCounts = right.compute();
+            TextStatistics counts = left.join();
+            counts.merge(rightCounts);
+            return counts;
+        }
+
+        private TextStatistics count() {
+            TextStatistics stats = new TextStatistics(PARTIAL_MAX_WORDS, PARTIAL_MAX_BIGRAMS);
+            WordTokenizer tokenizer = new WordTokenizer(decode(buffer, from, to), true);
+            List<String> chunk = new ArrayList<>(TOKEN_BATCH);
+            while (tokenizer.next(chunk, TOKEN_BATCH) > 0) {
+                stats.add(chunk);
+                chunk.clear();
+            }
+            return stats;
+        }
+    }
+
+    /**
+     * First position after 'start' that follows a line end, or else a space or tab, so no word
+     * or UTF-8 sequence is cut. Returns 'to' if there is none nearby.
+     */
+    private static int splitPoint(ByteBuffer buffer, int start, int to) {
+        int limit = Math.min(to, start + MAX_SPLIT_SEARCH);
+        int space = -1;
+        for (int i = start; i < limit; i++) {
+            byte b = buffer.get(i);
+            if (b == '\n') return i + 1;
+            if (space < 0 && (b == ' ' || b == '\t')) space = i + 1;
+        }
+        return space >= 0 ? space : to;
+    }
+
+    private static CharBuffer decode(ByteBuffer buffer, int from, int to) {
+        ByteBuffer slice = buffer.duplicate();
+        slice.limit(to);
+        slice.position(from);
+        // Decoders are not thread-safe: one per call
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        try {
+            return decoder.decode(slice);
+        } catch (CharacterCodingException e) {
+            // Not thrown with REPLACE
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.app.bubble;
+
+/**
+ * Approximate usage counts for words that are not (yet) in the learned vocabulary.
+ * DEPTH rows of WIDTH counters, each row indexed by its own hash of the word; the estimate is the
+ * smallest of a word's counters, so it may overcount on collisions but never undercounts.
+ * Counters are halved every WIDTH * 8 additions, so the sketch follows recent usage and its
+ * memory stays fixed (DEPTH * WIDTH ints) however many distinct words it sees. Not thread-safe.
+ */
+public class CountMinSketch {
+
+    private static final int DEPTH = 4;
+    private static final int WIDTH = 4096; // Power of two
+
+    private final int[] counters = new int[DEPTH * WIDTH];
+    private final int[] slots = new int[DEPTH];
+    private int additions;
+
+    /**
+     * Adds uses of a word and returns its new estimate.
+     */
+    public int add(String word, int uses) {
+        locate(word.hashCode());
+        return addToSlots(uses);
+    }
+
+    /**
+     * Adds uses of a word pair and returns its new estimate.
+     */
+    public int add(String previous, String next, int uses) {
+        locate(31 * previous.hashCode() + next.hashCode());
+        return addToSlots(uses);
+    }
+
+    private int addToSlots(int uses) {
+        int estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            estimate = Math.min(estimate, counters[slots[row]]);
+        }
+        estimate += uses;
+        // Conservative update: only raise counters that are below the new estimate
+        for (int row = 0; row < DEPTH; row++) {
+            if (counters[slots[row]] < estimate) counters[slots[row]] = estimate;
+        }
+
+        additions += uses;
+        if (additions >= WIDTH * 8) age();
+        return estimate;
+    }
+
+    public int estimate(String word) {
+        locate(word.hashCode());
+        int estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            estimate = Math.min(estimate, counters[slots[row]]);
+        }
+        return estimate;
+    }
+
+    private void age() {
+        for (int i = 0; i < counters.length; i++) counters[i] >>>= 1;
+        additions /= 2;
+    }
+
+    private void locate(int hash) {
+        int h = hash * 0x9E3779B9;
+        int step = (h >>> 16) | 1;
+        for (int row = 0; row < DEPTH; row++) {
+            h += step;
+            int mixed = h ^ (h >>> 15);
+            slots[row] = row * WIDTH + (((mixed * 0x85EBCA6B) >>> 20) & (WIDTH - 1));
+        }
+    }
+}
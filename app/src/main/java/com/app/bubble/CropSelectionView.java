@@ -27,6 +27,9 @@ public class CropSelectionView extends View {
     private int screenHeight;
     private int screenWidth;
     private static final int SCROLL_THRESHOLD = 150; // Pixels from bottom to trigger scroll
+    private static final int BORDER_WIDTH = 5;
+    // NEW: Set once the page starts scrolling and the long capture is running
+    private boolean longCaptureStarted = false;
 
     public CropSelectionView(Context context) {
         super(context);
@@ -44,7 +47,7 @@ public class CropSelectionView extends View {
 
         borderPaint = new Paint();
         borderPaint.setColor(Color.BLUE);
-        borderPaint.setStrokeWidth(5f);
+        borderPaint.setStrokeWidth(BORDER_WIDTH);
         borderPaint.setStyle(Paint.Style.STROKE);
 
         // Read settings
@@ -102,8 +105,8 @@ public class CropSelectionView extends View {
         super.onDraw(canvas);
         selectionRect = getNormalizedRect();
         
-        // Draw the blue fill
-        canvas.drawRect(selectionRect, paint);
+        // Draw the blue fill (not while capturing, it would tint the frames)
+        if (!longCaptureStarted) canvas.drawRect(selectionRect, paint);
         // Draw the border
         canvas.drawRect(selectionRect, borderPaint);
     }
@@ -132,6 +135,12 @@ public class CropSelectionView extends View {
                     
                     // Trigger continuous smooth scrolling
                     GlobalScrollService.startSmoothScroll();
+
+                    // NEW: Capture the page as it scrolls by
+                    if (!longCaptureStarted) {
+                        longCaptureStarted = true;
+                        startLongCapture();
+                    }
                 } else {
                     // Stop scrolling if finger moves away from edge
                     GlobalScrollService.stopScroll();
@@ -158,6 +167,22 @@ public class CropSelectionView extends View {
         return false;
     }
 
+    // Tells the service to capture the inside of the selection (without its border) while scrolling
+    private void startLongCapture() {
+        RectF normalized = getNormalizedRect();
+        Rect captureRect = new Rect(
+            (int) normalized.left + BORDER_WIDTH,
+            (int) normalized.top + BORDER_WIDTH,
+            (int) normalized.right - BORDER_WIDTH,
+            (int) normalized.bottom - BORDER_WIDTH
+        );
+        try {
+            ((FloatingTranslatorService) getContext()).onSelectionScrollStarted(captureRect);
+        } catch (ClassCastException e) {
+            e.printStackTrace();
+        }
+    }
+
     private void resetAutoCloseTimer() {
         autoCloseHandler.removeCallbacks(autoCloseRunnable);
         autoCloseHandler.postDelayed(autoCloseRunnable, timeoutDuration);
@@ -52,6 +52,7 @@ import com.google.mlkit.vision.text.TextRecognition;
 import com.google.mlkit.vision.text.TextRecognizer;
 import com.google.mlkit.vision.text.latin.TextRecognizerOptions;
 
+import java.io.File;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -115,6 +116,12 @@ public class FloatingTranslatorService extends Service {
     private static final long CAPTURE_INTERVAL_MS = 400; 
     private Rect currentCropRect;
 
+    // Drag-to-scroll capture: frames are stitched as they arrive, with no length limit
+    private StreamingStitcher longCapture;
+    private ExecutorService stitchExecutor = Executors.newSingleThreadExecutor();
+    // Rows OCR'd at a time, so the whole capture is never one bitmap
+    private static final int OCR_SEGMENT_ROWS = 2048;
+
     @Override
     public IBinder onBind(Intent intent) { return null; }
 
@@ -226,6 +233,12 @@ public class FloatingTranslatorService extends Service {
              floatingBubbleView.setVisibility(View.VISIBLE);
         }
 
+        if (longCapture != null) {
+            // A long capture is running: the next frame (without the overlay) is its last one
+            isBurstMode = false;
+            return;
+        }
+
         if (mediaProjection != null) {
             // Use Single Shot Mode
             isBurstMode = false;
@@ -237,6 +250,20 @@ public class FloatingTranslatorService extends Service {
         }
     }
 
+    // NEW: Triggered when the selection is dragged to the bottom edge and the page starts scrolling.
+    // Frames are captured until the selection is finished, then OCR'd in order.
+    public void onSelectionScrollStarted(Rect captureRect) {
+        if (mediaProjection == null || longCapture != null || imageReader != null) return;
+        if (captureRect.width() <= 0 || captureRect.height() <= 0) return;
+
+        isBurstMode = true;
+        lastCaptureTime = 0;
+        currentCropRect = captureRect;
+        // Coarse-to-fine matching: live scrolling leaves sub-pixel jitter between frames
+        longCapture = new StreamingStitcher(captureRect.width(), new File(getCacheDir(), "long_capture"), true);
+        startCapture(captureRect);
+    }
+
     // Original Capture Logic (Restored)
     private void startCapture(final Rect cropRect) {
         if (imageReader != null) return;
@@ -260,6 +287,16 @@ public class FloatingTranslatorService extends Service {
                 try {
                     image = reader.acquireLatestImage();
                     if (image != null) {
+                        // Long capture: skip frames arriving faster than CAPTURE_INTERVAL_MS, except the last one
+                        if (longCapture != null && isBurstMode) {
+                            long now = System.currentTimeMillis();
+                            if (now - lastCaptureTime < CAPTURE_INTERVAL_MS) {
+                                image.close();
+                                return;
+                            }
+                            lastCaptureTime = now;
+                        }
+
                         Image.Plane[] planes = image.getPlanes();
                         ByteBuffer buffer = planes[0].getBuffer();
                         int pixelStride = planes[0].getPixelStride();
@@ -281,6 +318,12 @@ public class FloatingTranslatorService extends Service {
                         }
                         fullBitmap.recycle();
 
+                        if (longCapture != null) {
+                            addLongCaptureFrame(capturedFrame, !isBurstMode);
+                            image.close();
+                            return;
+                        }
+
                         if (capturedFrame != null) {
                             capturedBitmaps.add(capturedFrame);
                         }
@@ -303,6 +346,63 @@ public class FloatingTranslatorService extends Service {
         if (imageReader != null) { imageReader.close(); imageReader = null; }
     }
 
+    // Stitches a frame in the background. After the last one, OCRs the capture segment by segment.
+    private void addLongCaptureFrame(final Bitmap frame, final boolean last) {
+        final StreamingStitcher stitcher = longCapture;
+        if (last) {
+            stopCapture();
+            longCapture = null;
+        }
+        stitchExecutor.execute(() -> {
+            if (frame != null) {
+                try {
+                    stitcher.addFrame(frame);
+                } catch (OutOfMemoryError e) {
+                    e.printStackTrace(); // The frame is dropped, the capture goes on
+                }
+                frame.recycle();
+            }
+            if (last) ocrLongImage(stitcher.getImage(), 0, new StringBuilder());
+        });
+    }
+
+    // OCRs rows [from, end) of a long capture one segment at a time (cut between lines of text),
+    // then releases it and handles the text. The image is only touched on stitchExecutor.
+    private void ocrLongImage(final LongImage longImage, final int from, final StringBuilder text) {
+        stitchExecutor.execute(() -> {
+            if (from >= longImage.getHeight()) {
+                longImage.release();
+                final String result = text.toString().trim();
+                handler.post(() -> onOcrText(result));
+                return;
+            }
+
+            final int cut = longImage.findCut(from, OCR_SEGMENT_ROWS);
+            final Bitmap segment;
+            try {
+                segment = longImage.renderWindow(from, cut - from);
+            } catch (OutOfMemoryError e) {
+                e.printStackTrace();
+                ocrLongImage(longImage, cut, text);
+                return;
+            }
+
+            TextRecognizer recognizer = TextRecognition.getClient(TextRecognizerOptions.DEFAULT_OPTIONS);
+            recognizer.process(InputImage.fromBitmap(segment, 0))
+                .addOnSuccessListener(visionText -> {
+                    String segmentText = visionText.getText();
+                    if (segmentText != null && !segmentText.isEmpty()) text.append(segmentText).append("\n");
+                    segment.recycle();
+                    ocrLongImage(longImage, cut, text);
+                })
+                .addOnFailureListener(e -> {
+                    e.printStackTrace();
+                    segment.recycle();
+                    ocrLongImage(longImage, cut, text);
+                });
+        });
+    }
+
     private void processBlueBubbleResult() {
         if (!capturedBitmaps.isEmpty()) {
             performTranslationOcr(capturedBitmaps.get(0));
@@ -318,29 +418,7 @@ public class FloatingTranslatorService extends Service {
             .addOnSuccessListener(new OnSuccessListener<Text>() {
                 @Override
                 public void onSuccess(Text visionText) {
-                    latestOcrText = visionText.getText();
-                    if (latestOcrText != null && !latestOcrText.isEmpty()) {
-                        
-                        // NEW: Check for Copy Only Mode
-                        if (isCopyOnlyMode) {
-                            // Copy to Clipboard directly without translation
-                            ClipboardManager clipboard = (ClipboardManager) getSystemService(Context.CLIPBOARD_SERVICE);
-                            if (clipboard != null) {
-                                ClipData clip = ClipData.newPlainText("OCR Copy", latestOcrText);
-                                clipboard.setPrimaryClip(clip);
-                                Toast.makeText(FloatingTranslatorService.this, "Text Copied!", Toast.LENGTH_SHORT).show();
-                            }
-                            // Reset Flag
-                            isCopyOnlyMode = false;
-                        } else {
-                            // Normal Flow: Translate
-                            translateText(latestOcrText);
-                        }
-                        
-                    } else {
-                        Toast.makeText(FloatingTranslatorService.this, "No text found", Toast.LENGTH_SHORT).show();
-                        isCopyOnlyMode = false; // Reset even on fail
-                    }
+                    onOcrText(visionText.getText());
                 }
             })
             .addOnFailureListener(e -> {
@@ -349,6 +427,33 @@ public class FloatingTranslatorService extends Service {
             });
     }
 
+    // Copies or translates the text read from the selection
+    private void onOcrText(String text) {
+        latestOcrText = text;
+        if (latestOcrText != null && !latestOcrText.isEmpty()) {
+
+            // NEW: Check for Copy Only Mode
+            if (isCopyOnlyMode) {
+                // Copy to Clipboard directly without translation
+                ClipboardManager clipboard = (ClipboardManager) getSystemService(Context.CLIPBOARD_SERVICE);
+                if (clipboard != null) {
+                    ClipData clip = ClipData.newPlainText("OCR Copy", latestOcrText);
+                    clipboard.setPrimaryClip(clip);
+                    Toast.makeText(FloatingTranslatorService.this, "Text Copied!", Toast.LENGTH_SHORT).show();
+                }
+                // Reset Flag
+                isCopyOnlyMode = false;
+            } else {
+                // Normal Flow: Translate
+                translateText(latestOcrText);
+            }
+
+        } else {
+            Toast.makeText(FloatingTranslatorService.this, "No text found", Toast.LENGTH_SHORT).show();
+            isCopyOnlyMode = false; // Reset even on fail
+        }
+    }
+
     private void translateText(final String text) {
         // Find language codes
         int srcIndex = -1, targetIndex = -1;
@@ -724,6 +829,12 @@ public class FloatingTranslatorService extends Service {
         super.onDestroy();
         sInstance = null;
         if (mediaProjection != null) mediaProjection.stop();
+        if (longCapture != null) {
+            final StreamingStitcher stitcher = longCapture;
+            longCapture = null;
+            stitchExecutor.execute(stitcher::recycle);
+        }
+        stitchExecutor.shutdown();
         if (floatingBubbleView != null) windowManager.removeView(floatingBubbleView);
         if (popupView != null) windowManager.removeView(popupView);
         if (closeTargetView != null) windowManager.removeView(closeTargetView);
@@ -0,0 +1,348 @@
+package com.app.bubble;
+
+import android.inputmethodservice.Keyboard;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Glide typing: turns a finger path drawn across the letter keys into ranked words.
+ *
+ * The path is resampled to SAMPLES evenly spaced points. A word's letters are aligned, in order,
+ * to path points near their keys. The alignment costs the letters' squared distances (in key
+ * sizes), plus a penalty for each end or corner of the path that no letter was aligned to.
+ * Candidate words come from a lexicon trie, expanded by a beam search. Each prefix carries one
+ * dynamic-programming row over the path points, and each length keeps the BEAM_WIDTH cheapest
+ * prefixes; an extension that could not make the beam is not even looked up in the lexicon.
+ * A letter with no path point within MAX_LETTER_DISTANCE keys is never expanded, which prunes
+ * most of the trie. Word frequency and the path length break near ties.
+ *
+ * Immutable once built (key geometry only), so decode() may run on any thread.
+ */
+public class GestureDecoder {
+
+    /**
+     * A trie over the candidate words. Nodes are immutable; null means no word continues that way.
+     */
+    public interface Lexicon<N> {
+        N root();
+
+        N child(N node, char c);
+
+        /**
+         * Relative frequency in (0, 1] of the prefix as a whole word, 0 if it is not a word.
+         */
+        double wordFrequency(N node);
+    }
+
+    private static final int SAMPLES = 48;
+    private static final int MAX_WORD_LENGTH = 24;
+    private static final int BEAM_WIDTH = 64;
+
+    // Shorter paths are taps, left to the keyboard
+    private static final float MIN_PATH_KEYS = 1.0f;
+    // Letters must lie this close (in key sizes) to the path point they are aligned to
+    private static final float MAX_LETTER_DISTANCE = 1.2f;
+    // Penalties for path points no letter was aligned to
+    private static final float END_WEIGHT = 3.0f;
+    private static final float CORNER_WEIGHT = 1.5f;
+    // Turn (radians) that makes a point a corner
+    private static final double CORNER_ANGLE = Math.PI / 4;
+    // Share of the still unmatched corners counted when ranking unfinished prefixes
+    private static final float FUTURE_WEIGHT = 0.5f;
+    private static final double FREQUENCY_WEIGHT = 0.4;
+    private static final double LENGTH_WEIGHT = 2.0;
+
+    private static final float INF = Float.MAX_VALUE / 4;
+
+    private final char[] letters;
+    private final float[] centerX;
+    private final float[] centerY;
+    private final float keyWidth;
+    private final float keyHeight;
+
+    /**
+     * @param letters   lower-case letter of every key
+     * @param centerX   key centers, in the same coordinates as the paths given to decode()
+     * @param centerY
+     * @param keyWidth  typical letter key size
+     * @param keyHeight
+     */
+    public GestureDecoder(char[] letters, float[] centerX, float[] centerY, float keyWidth, float keyHeight) {
+        this.letters = letters.clone();
+        this.centerX = centerX.clone();
+        this.centerY = centerY.clone();
+        this.keyWidth = keyWidth;
+        this.keyHeight = keyHeight;
+    }
+
+    /**
+     * Decoder for the letter keys of a keyboard layout (e.g. res/xml/qwerty.xml), in the
+     * keyboard's own coordinates.
+     */
+    public static GestureDecoder forKeyboard(Keyboard keyboard) {
+        List<Keyboard.Key> keys = new ArrayList<>();
+        for (Keyboard.Key key : keyboard.getKeys()) {
+            if (key.codes.length > 0 && key.codes[0] >= 'a' && key.codes[0] <= 'z') keys.add(key);
+        }
+
+        char[] letters = new char[keys.size()];
+        float[] x = new float[keys.size()];
+        float[] y = new float[keys.size()];
+        float width = 0;
+        float height = 0;
+        for (int i = 0; i < keys.size(); i++) {
+            Keyboard.Key key = keys.get(i);
+            letters[i] = (char) key.codes[0];
+            x[i] = key.x + key.width / 2f;
+            y[i] = key.y + key.height / 2f;
+            width += key.width;
+            height += key.height;
+        }
+        int n = Math.max(1, keys.size());
+        return new GestureDecoder(letters, x, y, Math.max(1, width / n), Math.max(1, height / n));
+    }
+
+    public float getKeyWidth() {
+        return keyWidth;
+    }
+
+    /**
+     * True if (x, y) lies on a letter key, where a gesture may start.
+     */
+    public boolean isOnLetter(float x, float y) {
+        for (int i = 0; i < letters.length; i++) {
+            if (Math.abs(x - centerX[i]) <= keyWidth / 2 && Math.abs(y - centerY[i]) <= keyHeight / 2) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Up to 'limit' words (lower case, as spelled in the lexicon) for the path through the
+     * 'count' points (xs, ys), best first. Empty if the path is too short to be a gesture.
+     */
+    public <N> List<String> decode(float[] xs, float[] ys, int count, Lexicon<N> lexicon, int limit) {
+        List<String> words = new ArrayList<>();
+        if (count < 2 || limit <= 0) return words;
+
+        float[] px = new float[SAMPLES];
+        float[] py = new float[SAMPLES];
+        float pathLength = resample(xs, ys, count, px, py);
+        if (pathLength < keyWidth * MIN_PATH_KEYS) return words;
+
+        float[] skipped = skipWeights(px, py);
+        float[][] costs = letterCosts(px, py);
+
+        List<Candidate> found = new ArrayList<>();
+        List<Prefix<N>> beam = new ArrayList<>();
+        beam.add(new Prefix<>(lexicon.root(), "", null, -1, 0, 0));
+
+        for (int depth = 0; depth < MAX_WORD_LENGTH && !beam.isEmpty(); depth++) {
+            // Worst first, so the prefix to drop is at the head
+            PriorityQueue<Prefix<N>> next = new PriorityQueue<>(BEAM_WIDTH + 1, Collections.reverseOrder(BY_ESTIMATE));
+            for (Prefix<N> prefix : beam) {
+                for (int key = 0; key < letters.length; key++) {
+                    float[] row = extend(prefix.row, costs[key], skipped);
+                    if (row == null) continue;
+                    float rank = estimate(row, skipped);
+                    // Could not make the beam: not worth a lexicon lookup
+                    if (next.size() == BEAM_WIDTH && rank >= next.peek().estimate) continue;
+                    N child = lexicon.child(prefix.node, letters[key]);
+                    if (child == null) continue;
+
+                    float ideal = prefix.idealLength;
+                    if (prefix.key >= 0) {
+                        ideal += (float) Math.hypot(centerX[key] - centerX[prefix.key], centerY[key] - centerY[prefix.key]);
+                    }
+                    Prefix<N> extended = new Prefix<>(child, prefix.word + letters[key], row, key, ideal, rank);
+                    next.add(extended);
+                    if (next.size() > BEAM_WIDTH) next.poll();
+
+                    double frequency = lexicon.wordFrequency(child);
+                    if (frequency > 0) {
+                        found.add(new Candidate(extended.word, score(row, skipped, ideal, pathLength, frequency)));
+                    }
+                }
+            }
+
+            beam = new ArrayList<>(next);
+        }
+
+        Collections.sort(found, BY_SCORE);
+        for (int i = 0; i < found.size() && words.size() < limit; i++) {
+            words.add(found.get(i).word);
+        }
+        return words;
+    }
+
+    // --- Alignment ---
+
+    /**
+     * Row of the prefix extended by one letter: best cost with that letter aligned to each point.
+     * The letter either shares its parent's point (double letters) or follows it, skipping the
+     * points in between. The root (parent == null) may start anywhere after skipping the points
+     * before. Returns null if the letter cannot be aligned anywhere.
+     */
+    private static float[] extend(float[] parent, float[] cost, float[] skipped) {
+        float[] row = new float[SAMPLES];
+        boolean reachable = false;
+        // min over earlier points i of parent[i] - skipped[i + 1]
+        float best = parent == null ? 0 : INF;
+        for (int j = 0; j < SAMPLES; j++) {
+            float from = best < INF ? best + skipped[j] : INF;
+            if (parent != null && parent[j] < from) from = parent[j];
+            if (cost[j] >= INF || from >= INF) {
+                row[j] = INF;
+            } else {
+                row[j] = from + cost[j];
+                reachable = true;
+            }
+            if (parent != null && parent[j] < INF) best = Math.min(best, parent[j] - skipped[j + 1]);
+        }
+        return reachable ? row : null;
+    }
+
+    /**
+     * Rank of an unfinished prefix: its cost plus part of what skipping the rest would cost.
+     */
+    private static float estimate(float[] row, float[] skipped) {
+        float best = INF;
+        for (int j = 0; j < SAMPLES; j++) {
+            if (row[j] >= INF) continue;
+            best = Math.min(best, row[j] + FUTURE_WEIGHT * (skipped[SAMPLES] - skipped[j + 1]));
+        }
+        return best;
+    }
+
+    /**
+     * Final cost of a word (lower is better).
+     */
+    private double score(float[] row, float[] skipped, float idealLength, float pathLength, double frequency) {
+        float spatial = INF;
+        for (int j = 0; j < SAMPLES; j++) {
+            if (row[j] >= INF) continue;
+            spatial = Math.min(spatial, row[j] + skipped[SAMPLES] - skipped[j + 1]);
+        }
+        // The straight line through the letters should be about as long as the finger's path
+        double ratio = Math.log((idealLength + keyWidth) / (pathLength + keyWidth));
+        return spatial + LENGTH_WEIGHT * ratio * ratio - FREQUENCY_WEIGHT * Math.log(frequency);
+    }
+
+    /**
+     * Squared distance (in key sizes) from every key to every path point, INF when too far.
+     */
+    private float[][] letterCosts(float[] px, float[] py) {
+        float limit = MAX_LETTER_DISTANCE * MAX_LETTER_DISTANCE;
+        float[][] costs = new float[letters.length][SAMPLES];
+        for (int key = 0; key < letters.length; key++) {
+            for (int j = 0; j < SAMPLES; j++) {
+                float dx = (px[j] - centerX[key]) / keyWidth;
+                float dy = (py[j] - centerY[key]) / keyHeight;
+                float d = dx * dx + dy * dy;
+                costs[key][j] = d > limit ? INF : d;
+            }
+        }
+        return costs;
+    }
+
+    /**
+     * Cumulative penalty for leaving path points unmatched: skipped[i] sums the points before i.
+     * Only the two ends and the corners carry weight; a path may cross other keys freely.
+     */
+    private static float[] skipWeights(float[] px, float[] py) {
+        float[] weight = new float[SAMPLES];
+        weight[0] = END_WEIGHT;
+        weight[SAMPLES - 1] = END_WEIGHT;
+
+        double[] turn = new double[SAMPLES];
+        for (int i = 2; i < SAMPLES - 2; i++) {
+            double in = Math.atan2(py[i] - py[i - 2], px[i] - px[i - 2]);
+            double out = Math.atan2(py[i + 2] - py[i], px[i + 2] - px[i]);
+            double angle = Math.abs(out - in);
+            turn[i] = angle > Math.PI ? 2 * Math.PI - angle : angle;
+        }
+        // One corner per turn: only the sharpest point of it
+        for (int i = 2; i < SAMPLES - 2; i++) {
+            if (turn[i] >= CORNER_ANGLE && turn[i] >= turn[i - 1] && turn[i] > turn[i + 1]
+                    && turn[i] >= turn[i - 2] && turn[i] > turn[i + 2]) {
+                weight[i] = CORNER_WEIGHT;
+            }
+        }
+
+        float[] skipped = new float[SAMPLES + 1];
+        for (int i = 0; i < SAMPLES; i++) {
+            skipped[i + 1] = skipped[i] + weight[i];
+        }
+        return skipped;
+    }
+
+    /**
+     * Resamples the path to SAMPLES points evenly spaced along it; returns its length.
+     */
+    private static float resample(float[] xs, float[] ys, int count, float[] px, float[] py) {
+        float[] along = new float[count];
+        for (int i = 1; i < count; i++) {
+            along[i] = along[i - 1] + (float) Math.hypot(xs[i] - xs[i - 1], ys[i] - ys[i - 1]);
+        }
+        float length = along[count - 1];
+
+        int segment = 1;
+        for (int j = 0; j < SAMPLES; j++) {
+            float target = length * j / (SAMPLES - 1);
+            while (segment < count - 1 && along[segment] < target) segment++;
+            float span = along[segment] - along[segment - 1];
+            float t = span > 0 ? (target - along[segment - 1]) / span : 0;
+            t = Math.max(0, Math.min(1, t));
+            px[j] = xs[segment - 1] + (xs[segment] - xs[segment - 1]) * t;
+            py[j] = ys[segment - 1] + (ys[segment] - ys[segment - 1]) * t;
+        }
+        return length;
+    }
+
+    // --- Search state ---
+
+    private static final class Prefix<N> {
+        final N node;
+        final String word;
+        final float[] row;
+        final int key;
+        final float idealLength;
+        final float estimate;
+
+        Prefix(N node, String word, float[] row, int key, float idealLength, float estimate) {
+            this.node = node;
+            this.word = word;
+            this.row = row;
+            this.key = key;
+            this.idealLength = idealLength;
+            this.estimate = estimate;
+        }
+    }
+
+    private static final class Candidate {
+        final String word;
+        final double score;
+
+        Candidate(String word, double score) {
+            this.word = word;
+            this.score = score;
+        }
+    }
+
+    private static final Comparator<Prefix<?>> BY_ESTIMATE = new Comparator<Prefix<?>>() {
+        @Override
+        public int compare(Prefix<?> a, Prefix<?> b) {
+            return Float.compare(a.estimate, b.estimate);
+        }
+    };
+
+    private static final Comparator<Candidate> BY_SCORE = new Comparator<Candidate>() {
+        @Override
+        public int compare(Candidate a, Candidate b) {
+            return Double.compare(a.score, b.score);
+        }
+    };
+}
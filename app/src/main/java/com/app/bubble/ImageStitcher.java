@@ -1,135 +1,293 @@
 package com.app.bubble;
 
 import android.graphics.Bitmap;
-import android.graphics.Canvas;
-import android.graphics.Color;
-import java.util.List; 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
+/**
+ * Joins screenshots taken while scrolling into one long image.
+ * UPDATED: Overlaps are found from per-row hashes computed once per frame. Several rows must
+ * match in sequence, blank rows do not count as evidence, and each overlap comes with a confidence.
+ * UPDATED: Frames are streamed through a StreamingStitcher, which appends only the new rows of each
+ * frame to fixed-height tiles, instead of re-copying the growing result on every merge.
+ * UPDATED: No more 8000 px clamp. stitchLongImage returns the tiles themselves (LongImage), for
+ * captures too long for one bitmap.
+ * UPDATED: Tall frames have their overlap heights scored in parallel, in slices on a ForkJoinPool.
+ * UPDATED: Sticky headers and footers (StickyRegions) are left out of the search and appear once.
+ */
 public class ImageStitcher {
 
+    // Overlaps found with less confidence are ignored (frames are simply appended)
+    public static final float MIN_CONFIDENCE = 0.5f;
+
+    // Rows read per getPixels() call while hashing
+    private static final int STRIP_ROWS = 32;
+    // Hash every n-th pixel of a row
+    private static final int PIXEL_STEP = 2;
+    // Low bits dropped from each channel, so rendering noise does not change a row's hash
+    private static final int COLOR_MASK = 0xF8F8F8;
+    // An overlap needs this many matching non-blank rows to count as evidence
+    private static final int MIN_EVIDENCE_ROWS = 8;
+    // Share of the non-blank rows of an overlap that must match
+    private static final float MIN_MATCH_RATIO = 0.9f;
+    // Offsets closer than this to the best one are the same match, not a rival
+    private static final int RIVAL_DISTANCE = 3;
+    // Frames with fewer rows are searched on the calling thread alone
+    private static final int MIN_PARALLEL_ROWS = 512;
+    // Slices of overlap heights per worker thread, to balance the load (taller overlaps cost more)
+    private static final int TASKS_PER_THREAD = 4;
+
+    private static volatile ForkJoinPool searchPool;
+
+    /**
+     * Rows shared by the bottom of one frame and the top of the next.
+     */
+    public static final class Overlap {
+        public static final Overlap NONE = new Overlap(0, 0f);
+
+        public final int rows;
+        // 0 (no evidence) to 1 (every non-blank row matched and no other offset fits)
+        public final float confidence;
+
+        Overlap(int rows, float confidence) {
+            this.rows = rows;
+            this.confidence = confidence;
+        }
+    }
+
+    /**
+     * Hash of every row of a frame, computed once and compared many times.
+     * A row of a single color is 'blank': it matches too many places to prove anything.
+     */
+    public static final class RowHashes {
+        final int[] hashes;
+        final boolean[] blank;
+        // nonBlank[k]: number of non-blank rows among the first k
+        final int[] nonBlank;
+
+        RowHashes(int[] hashes, boolean[] blank) {
+            this.hashes = hashes;
+            this.blank = blank;
+            nonBlank = new int[hashes.length + 1];
+            for (int k = 0; k < hashes.length; k++) {
+                nonBlank[k + 1] = nonBlank[k] + (blank[k] ? 0 : 1);
+            }
+        }
+
+        public int getHeight() {
+            return hashes.length;
+        }
+
+        /**
+         * Hashes of the rows [from, to) only.
+         */
+        public RowHashes slice(int from, int to) {
+            if (from == 0 && to == hashes.length) return this;
+            return new RowHashes(Arrays.copyOfRange(hashes, from, to), Arrays.copyOfRange(blank, from, to));
+        }
+    }
+
     /**
      * Stitches a list of bitmaps vertically, attempting to remove overlaps caused by scrolling.
+     * The result is one bitmap, so very long captures may not fit in memory; see stitchLongImage.
      */
     public static Bitmap stitchImages(List<Bitmap> bitmaps) {
         if (bitmaps == null || bitmaps.isEmpty()) {
             return null;
         }
-        if (bitmaps.size() == 1) {
-            return bitmaps.get(0);
+        List<Bitmap> frames = new ArrayList<>();
+        for (Bitmap bitmap : bitmaps) {
+            if (bitmap != null) frames.add(bitmap);
+        }
+        if (frames.isEmpty()) {
+            return null;
+        }
+        if (frames.size() == 1) {
+            return frames.get(0);
         }
 
-        Bitmap result = bitmaps.get(0);
+        int width = frames.get(0).getWidth();
+        for (Bitmap frame : frames) {
+            width = Math.min(width, frame.getWidth());
+        }
 
-        for (int i = 1; i < bitmaps.size(); i++) {
-            Bitmap nextBitmap = bitmaps.get(i);
-            if (nextBitmap != null) {
-                result = mergeTwoImages(result, nextBitmap);
+        StreamingStitcher stitcher = new StreamingStitcher(width);
+        try {
+            for (Bitmap frame : frames) {
+                stitcher.addFrame(frame);
             }
+            return stitcher.toBitmap(stitcher.getHeight());
+        } catch (OutOfMemoryError e) {
+            e.printStackTrace();
+            return frames.get(0); // Fallback to just the first image if we run out of RAM
+        } finally {
+            stitcher.recycle();
         }
-
-        return result;
     }
 
-    private static Bitmap mergeTwoImages(Bitmap top, Bitmap bottom) {
-        // Find how many pixels at the bottom of 'top' match the top of 'bottom'
-        int overlap = findVerticalOverlap(top, bottom);
+    /**
+     * Stitches frames of any number into a LongImage, keeping a bounded number of tiles in memory
+     * (the rest go to 'spillDir'). The caller releases the result.
+     */
+    public static LongImage stitchLongImage(List<Bitmap> bitmaps, File spillDir) {
+        if (bitmaps == null) return null;
+        int width = Integer.MAX_VALUE;
+        for (Bitmap bitmap : bitmaps) {
+            if (bitmap != null) width = Math.min(width, bitmap.getWidth());
+        }
+        if (width == Integer.MAX_VALUE) return null;
+
+        StreamingStitcher stitcher = new StreamingStitcher(width, spillDir);
+        for (Bitmap bitmap : bitmaps) {
+            if (bitmap != null) stitcher.addFrame(bitmap);
+        }
+        return stitcher.getImage();
+    }
 
+    /**
+     * Finds how many rows at the bottom of 'top' reappear at the top of 'bottom'.
+     */
+    public static Overlap findOverlap(Bitmap top, Bitmap bottom) {
         int width = Math.min(top.getWidth(), bottom.getWidth());
-        // The new height is the sum of both minus the duplicate overlap part
-        int height = top.getHeight() + bottom.getHeight() - overlap;
-
-        // Limit height to avoid crashes (texture size limit usually 4096 or 8192)
-        // If it gets too long, we stop growing to prevent crash.
-        if (height > 8000) height = 8000;
+        return findOverlap(hashRows(top, width), hashRows(bottom, width));
+    }
 
-        try {
-            Bitmap result = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-            Canvas canvas = new Canvas(result);
+    /**
+     * Hashes the first 'width' pixels of every row (quantized, every PIXEL_STEP-th pixel).
+     */
+    public static RowHashes hashRows(Bitmap bitmap, int width) {
+        int height = bitmap.getHeight();
+        int[] hashes = new int[height];
+        boolean[] blank = new boolean[height];
+        int[] strip = new int[width * Math.min(STRIP_ROWS, Math.max(1, height))];
 
-            // Draw the top image
-            canvas.drawBitmap(top, 0, 0, null);
+        for (int y = 0; y < height; y += STRIP_ROWS) {
+            int rows = Math.min(STRIP_ROWS, height - y);
+            bitmap.getPixels(strip, 0, width, 0, y, width, rows);
+            for (int r = 0; r < rows; r++) {
+                int offset = r * width;
+                int first = strip[offset] & COLOR_MASK;
+                int hash = 17;
+                boolean uniform = true;
+                for (int x = 0; x < width; x += PIXEL_STEP) {
+                    int color = strip[offset + x] & COLOR_MASK;
+                    hash = 31 * hash + color;
+                    uniform &= color == first;
+                }
+                hashes[y + r] = hash;
+                blank[y + r] = uniform;
+            }
+        }
+        return new RowHashes(hashes, blank);
+    }
 
-            // Draw the bottom image, shifted up by the overlap amount so visuals align
-            // relative to the bottom of the top image.
-            // Formula: Y = top.getHeight() - overlap
-            canvas.drawBitmap(bottom, 0, top.getHeight() - overlap, null);
+    /**
+     * Tries every overlap height and keeps the one where the most non-blank rows line up.
+     * An overlap counts only if at least MIN_MATCH_RATIO of its non-blank rows (and at least
+     * MIN_EVIDENCE_ROWS of them) match. Confidence drops when another offset fits almost as well,
+     * which is what repetitive content (list items, table rows) looks like.
+     */
+    public static Overlap findOverlap(RowHashes top, RowHashes bottom) {
+        int maxRows = Math.min(top.getHeight(), bottom.getHeight());
 
-            // Recycle old bitmaps to free memory.
-            // IMPORTANT: Only recycle 'top' if it was an intermediate result (not the original first frame).
-            // For safety in this context, we rely on the GC or caller to clean up originals, 
-            // but explicit recycling here helps significantly with "Burst Mode".
-            // top.recycle(); 
-            // bottom.recycle();
+        // matched[rows]: matching non-blank rows if that overlap qualifies, else 0
+        int[] matched = new int[maxRows + 1];
+        int bestRows;
+        if (maxRows < MIN_PARALLEL_ROWS) {
+            bestRows = scoreOverlaps(top, bottom, 1, maxRows + 1, matched);
+        } else {
+            ForkJoinPool pool = getSearchPool();
+            int sliceRows = Math.max(1, maxRows / (pool.getParallelism() * TASKS_PER_THREAD));
+            bestRows = pool.invoke(new ScoreTask(top, bottom, 1, maxRows + 1, sliceRows, matched));
+        }
+        if (bestRows == 0) return Overlap.NONE;
 
-            return result;
-        } catch (OutOfMemoryError e) {
-            e.printStackTrace();
-            return top; // Fallback to just the top image if we run out of RAM
+        int rival = 0;
+        for (int rows = 1; rows <= maxRows; rows++) {
+            if (Math.abs(rows - bestRows) > RIVAL_DISTANCE) rival = Math.max(rival, matched[rows]);
         }
+        float ratio = matched[bestRows] / (float) bottom.nonBlank[bestRows];
+        float confidence = ratio * (1f - rival / (float) matched[bestRows]);
+        return new Overlap(bestRows, confidence);
     }
 
     /**
-     * Scans for visual overlap between two bitmaps.
-     * Returns the height (in pixels) of the overlapping region.
+     * Scores the overlap heights [from, to) into matched[] and returns the best of them
+     * (the lowest on a tie), or 0 if none qualifies. Only reads the hashes, so slices can run at once.
      */
-    private static int findVerticalOverlap(Bitmap top, Bitmap bottom) {
-        int width = Math.min(top.getWidth(), bottom.getWidth());
+    private static int scoreOverlaps(RowHashes top, RowHashes bottom, int from, int to, int[] matched) {
         int topHeight = top.getHeight();
-        int bottomHeight = bottom.getHeight();
-
-        // We assume the scroll isn't huge (e.g. not more than 50% of screen at a time)
-        // We look at the bottom 30% of the top image
-        int searchHeight = topHeight / 3; 
-        
-        // Safety check
-        if (searchHeight > bottomHeight) searchHeight = bottomHeight;
-
-        // Define a "signature" row from the bottom of the top image.
-        // CHANGED: Instead of 10px from bottom, use 150px from bottom.
-        // This avoids bottom navigation bars or static footers interfering with the match.
-        int offsetFromBottom = 150;
-        if (topHeight < 300) offsetFromBottom = 20; // fallback for small images
-
-        int referenceRowY = topHeight - offsetFromBottom;
-        int[] referencePixels = new int[width];
-        top.getPixels(referencePixels, 0, width, 0, referenceRowY, width, 1);
-
-        // Scan the top part of the bottom image to find this row
-        int[] comparePixels = new int[width];
-        
-        for (int y = 0; y < searchHeight; y++) {
-            bottom.getPixels(comparePixels, 0, width, 0, y, width, 1);
-
-            if (arraysSimilar(referencePixels, comparePixels)) {
-                // Match found!
-                // The overlap is: (distance from ref row to bottom of top img) + (distance from top of bottom img to match)
-                // Overlap = offsetFromBottom + y
-                return offsetFromBottom + y;
+        int bestRows = 0;
+        for (int rows = from; rows < to; rows++) {
+            int evidence = bottom.nonBlank[rows];
+            if (evidence < MIN_EVIDENCE_ROWS) continue;
+            int allowedMisses = (int) (evidence * (1 - MIN_MATCH_RATIO));
+
+            int start = topHeight - rows;
+            int hits = 0;
+            int misses = 0;
+            for (int k = 0; k < rows && misses <= allowedMisses; k++) {
+                if (bottom.blank[k]) continue;
+                if (top.hashes[start + k] == bottom.hashes[k]) hits++;
+                else misses++;
             }
+            if (misses > allowedMisses || hits < MIN_EVIDENCE_ROWS) continue;
+
+            matched[rows] = hits;
+            if (hits > matched[bestRows]) bestRows = rows;
         }
+        return bestRows;
+    }
 
-        // No overlap found (moved too fast or completely different content)
-        return 0;
+    /**
+     * Scores the overlap heights [from, to): directly when few, otherwise by splitting in two.
+     * Slices write disjoint parts of matched[]; the best of each half is kept on the way up.
+     */
+    private static final class ScoreTask extends RecursiveTask<Integer> {
+        private final RowHashes top;
+        private final RowHashes bottom;
+        private final int from;
+        private final int to;
+        private final int sliceRows;
+        private final int[] matched;
+
+        ScoreTask(RowHashes top, RowHashes bottom, int from, int to, int sliceRows, int[] matched) {
+            this.top = top;
+            this.bottom = bottom;
+            this.from = from;
+            this.to = to;
+            this.sliceRows = sliceRows;
+            this.matched = matched;
+        }
+
+        @Override
+        protected Integer compute() {
+            if (to - from <= sliceRows) return scoreOverlaps(top, bottom, from, to, matched);
+
+            int middle = (from + to) >>> 1;
+            ScoreTask lower = new ScoreTask(top, bottom, from, middle, sliceRows, matched);
+            ScoreTask upper = new ScoreTask(top, bottom, middle, to, sliceRows, matched);
+            lower.fork();
+            int upperBest = upper.compute();
+            int lowerBest = lower.join();
+            // Same winner as one pass in order: the lower height keeps a tie
+            return matched[upperBest] > matched[lowerBest] ? upperBest : lowerBest;
+        }
     }
 
     /**
-     * Compares two rows of pixels. Returns true if they are mostly similar.
-     * We use a threshold because compression/rendering artifacts might make pixels slightly different.
+     * Pool shared by the overlap searches (also LumaPyramid), created on first use.
      */
-    private static boolean arraysSimilar(int[] row1, int[] row2) {
-        int matches = 0;
-        int totalChecked = 0;
-        
-        // Check every 5th pixel to save CPU
-        for (int i = 0; i < row1.length; i += 5) {
-            totalChecked++;
-            if (row1[i] == row2[i]) {
-                matches++;
+    static ForkJoinPool getSearchPool() {
+        if (searchPool == null) {
+            synchronized (ImageStitcher.class) {
+                if (searchPool == null) searchPool = new ForkJoinPool();
             }
         }
-
-        // CHANGED: Increased strictness from 0.8 (80%) to 0.9 (90%)
-        // This ensures we don't accidentally stitch lines that just happen to have similar whitespace.
-        return matches > (totalChecked * 0.9);
+        return searchPool;
     }
-}
\ No newline at end of file
+}
@@ -1,7 +1,9 @@
 package com.app.bubble;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class LanguageUtils {
 
@@ -60,4 +62,89 @@ public class LanguageUtils {
         }
         return 0; // Default to first item
     }
+
+    // 3. Scripts -> languages written in them (first one is the default)
+    // Latin-script languages are not listed: Latin text belongs to the active Latin language
+    private static final Map<Character.UnicodeBlock, String[]> SCRIPT_LANGUAGES = new HashMap<>();
+    static {
+        SCRIPT_LANGUAGES.put(Character.UnicodeBlock.MALAYALAM, new String[] { "ml" });
+        SCRIPT_LANGUAGES.put(Character.UnicodeBlock.TAMIL, new String[] { "ta" });
+        SCRIPT_LANGUAGES.put(Character.UnicodeBlock.TELUGU, new String[] { "te" });
+        SCRIPT_LANGUAGES.put(Character.UnicodeBlock.KANNADA, new String[] { "kn" });
+        SCRIPT_LANGUAGES.put(Character.UnicodeBlock.GUJARATI, new String[] { "gu" });
+        SCRIPT_LANGUAGES.put(Character.UnicodeBlock.GURMUKHI, new String[] { "pa" });
+        SCRIPT_LANGUAGES.put(Character.UnicodeBlock.BENGALI, new String[] { "bn" });
+        SCRIPT_LANGUAGES.put(Character.UnicodeBlock.ORIYA, new String[] { "or" });
+        SCRIPT_LANGUAGES.put(Character.UnicodeBlock.SINHALA, new String[] { "si" });
+        SCRIPT_LANGUAGES.put(Character.UnicodeBlock.DEVANAGARI, new String[] { "hi", "mr", "ne" });
+        SCRIPT_LANGUAGES.put(Character.UnicodeBlock.THAI, new String[] { "th" });
+        SCRIPT_LANGUAGES.put(Character.UnicodeBlock.LAO, new String[] { "lo" });
+        SCRIPT_LANGUAGES.put(Character.UnicodeBlock.KHMER, new String[] { "km" });
+        SCRIPT_LANGUAGES.put(Character.UnicodeBlock.MYANMAR, new String[] { "my" });
+        SCRIPT_LANGUAGES.put(Character.UnicodeBlock.GEORGIAN, new String[] { "ka" });
+        SCRIPT_LANGUAGES.put(Character.UnicodeBlock.ARMENIAN, new String[] { "hy" });
+        SCRIPT_LANGUAGES.put(Character.UnicodeBlock.HEBREW, new String[] { "iw", "yi" });
+        SCRIPT_LANGUAGES.put(Character.UnicodeBlock.ETHIOPIC, new String[] { "am" });
+        SCRIPT_LANGUAGES.put(Character.UnicodeBlock.ARABIC, new String[] { "ar", "fa", "ur", "ps", "sd", "ug" });
+        SCRIPT_LANGUAGES.put(Character.UnicodeBlock.CYRILLIC, new String[] {
+                "ru", "uk", "bg", "be", "mk", "sr", "kk", "ky", "mn", "tg", "tt" });
+        SCRIPT_LANGUAGES.put(Character.UnicodeBlock.GREEK, new String[] { "el" });
+        SCRIPT_LANGUAGES.put(Character.UnicodeBlock.HANGUL_SYLLABLES, new String[] { "ko" });
+        SCRIPT_LANGUAGES.put(Character.UnicodeBlock.HIRAGANA, new String[] { "ja" });
+        SCRIPT_LANGUAGES.put(Character.UnicodeBlock.KATAKANA, new String[] { "ja" });
+        SCRIPT_LANGUAGES.put(Character.UnicodeBlock.CJK_UNIFIED_IDEOGRAPHS, new String[] { "zh-CN", "zh-TW", "ja" });
+    }
+
+    // Letters looked at to tell the script of a text
+    private static final int SCRIPT_SAMPLE = 64;
+
+    /**
+     * Guesses the language of a text from its script (most frequent among its first letters).
+     * If the script is shared, 'activeCode' wins when it is one of its languages; Latin or
+     * unknown scripts map to 'activeCode' if it is a Latin-script language, else to "en".
+     */
+    public static String detectLanguage(CharSequence text, String activeCode) {
+        Map<Character.UnicodeBlock, Integer> counts = new HashMap<>();
+        Character.UnicodeBlock best = null;
+        int bestCount = 0;
+        int letters = 0;
+        if (text != null) {
+            for (int i = 0; i < text.length() && letters < SCRIPT_SAMPLE; ) {
+                int cp = Character.codePointAt(text, i);
+                i += Character.charCount(cp);
+                if (!Character.isLetter(cp)) continue;
+                letters++;
+                Character.UnicodeBlock block = Character.UnicodeBlock.of(cp);
+                Integer count = counts.get(block);
+                int next = count == null ? 1 : count + 1;
+                counts.put(block, next);
+                if (next > bestCount) {
+                    bestCount = next;
+                    best = block;
+                }
+            }
+        }
+
+        String[] languages = best == null ? null : SCRIPT_LANGUAGES.get(best);
+        if (languages == null) {
+            return isLatinScript(activeCode) ? activeCode : "en";
+        }
+        for (String code : languages) {
+            if (code.equalsIgnoreCase(activeCode)) return code;
+        }
+        return languages[0];
+    }
+
+    private static boolean isLatinScript(String code) {
+        if (code == null) return false;
+        for (String[] languages : SCRIPT_LANGUAGES.values()) {
+            for (String language : languages) {
+                if (language.equalsIgnoreCase(code)) return false;
+            }
+        }
+        for (String known : LANGUAGE_CODES) {
+            if (known.equalsIgnoreCase(code)) return true;
+        }
+        return false;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,502 @@
+package com.app.bubble;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Crash-safe persistence for the learned typing model.
+ * Every learn event is appended to a small binary journal with a single write, so the typing path
+ * does O(1) I/O and an event survives process death as soon as the call returns.
+ * When the journal grows past a threshold, the owner captures its state and writes a snapshot
+ * in the background; journals covered by a snapshot are then deleted.
+ *
+ * Files (in filesDir/prediction):
+ *   model.snapshot       int magic, int version, long coveredGeneration, owner payload, int crc32
+ *   learn.journal.<gen>  records of (int length, byte type, payload). A torn tail is ignored.
+ * The snapshot is read with one sequential read and verified before any of it is applied.
+ * The same format is used to export and import the model (covered generation -1).
+ */
+public class LearningJournal {
+
+    public interface Replayer {
+        /**
+         * Reads the owner payload of a snapshot in the current format.
+         */
+        void onSnapshot(DataInputStream in) throws IOException;
+        void onWord(String word);
+        void onBigram(String previous, String next);
+        void onTrigram(String first, String second, String third);
+        void onWordUses(String word, int uses);
+        void onBigramUses(String previous, String next, int uses);
+        /**
+         * A committed word that also continues the phrase history (see appendPhraseWord).
+         */
+        void onPhraseWord(String word);
+        void onPhraseBreak();
+    }
+
+    public interface SnapshotWriter {
+        void writeTo(DataOutputStream out) throws IOException;
+    }
+
+    public interface SnapshotReader {
+        void readFrom(DataInputStream in) throws IOException;
+    }
+
+    private static final String DIR_NAME = "prediction";
+    private static final String SNAPSHOT_NAME = "model.snapshot";
+    private static final String JOURNAL_PREFIX = "learn.journal.";
+
+    private static final int SNAPSHOT_MAGIC = 0x42534E50; // "BSNP"
+    // The only payload layout read; a snapshot of any other version is rejected
+    public static final int SNAPSHOT_VERSION = 6;
+
+    private static final byte RECORD_WORD = 1;
+    private static final byte RECORD_WORDS = 2;
+    private static final byte RECORD_BIGRAM = 3;
+    private static final byte RECORD_TRIGRAM = 4;
+    private static final byte RECORD_COUNTS = 5;
+    private static final byte RECORD_PHRASE_WORD = 6;
+    private static final byte RECORD_PHRASE_BREAK = 7;
+
+    // Journal bytes after which a compaction into the snapshot is worth it
+    private static final long COMPACTION_THRESHOLD = 256 * 1024;
+
+    private final File dir;
+    private FileOutputStream journalOut;
+    private long generation;
+    private long journalBytes;
+    private boolean closed;
+
+    public LearningJournal(File filesDir) {
+        this(filesDir, DIR_NAME);
+    }
+
+    /**
+     * Journal kept in its own directory, e.g. one per language model.
+     */
+    public LearningJournal(File filesDir, String dirName) {
+        dir = new File(filesDir, dirName);
+        if (!dir.exists()) dir.mkdirs();
+    }
+
+    /**
+     * True if nothing was ever persisted here (used to migrate older storage once).
+     */
+    public boolean isEmpty() {
+        return !new File(dir, SNAPSHOT_NAME).exists() && listJournals().isEmpty();
+    }
+
+    /**
+     * Restores the snapshot, replays every newer journal in order and opens a fresh journal.
+     */
+    public synchronized void load(final Replayer replayer) {
+        long covered = -1;
+        File snapshot = new File(dir, SNAPSHOT_NAME);
+        if (snapshot.exists()) {
+            try {
+                covered = readSnapshot(readFile(snapshot), new SnapshotReader() {
+                    @Override
+                    public void readFrom(DataInputStream in) throws IOException {
+                        replayer.onSnapshot(in);
+                    }
+                });
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        long maxGeneration = covered;
+        for (long gen : listJournals()) {
+            File file = journalFile(gen);
+            if (gen <= covered) {
+                file.delete();
+                continue;
+            }
+            replay(file, replayer);
+            journalBytes += file.length();
+            maxGeneration = Math.max(maxGeneration, gen);
+        }
+
+        // Never append behind a possibly torn record: always start a new generation
+        generation = maxGeneration + 1;
+        openJournal();
+    }
+
+    // --- Appending (typing path) ---
+
+    public void appendWord(String word) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeByte(RECORD_WORD);
+            out.writeUTF(word);
+        } catch (IOException ignored) {
+            // In-memory stream
+        }
+        append(bytes.toByteArray());
+    }
+
+    public void appendWords(List<String> words) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(words.size() * 8 + 8);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeByte(RECORD_WORDS);
+            out.writeInt(words.size());
+            for (String word : words) out.writeUTF(word);
+        } catch (IOException ignored) {
+            // In-memory stream
+        }
+        append(bytes.toByteArray());
+    }
+
+    public void appendBigram(String previous, String next) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeByte(RECORD_BIGRAM);
+            out.writeUTF(previous);
+            out.writeUTF(next);
+        } catch (IOException ignored) {
+            // In-memory stream
+        }
+        append(bytes.toByteArray());
+    }
+
+    public void appendTrigram(String first, String second, String third) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(48);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeByte(RECORD_TRIGRAM);
+            out.writeUTF(first);
+            out.writeUTF(second);
+            out.writeUTF(third);
+        } catch (IOException ignored) {
+            // In-memory stream
+        }
+        append(bytes.toByteArray());
+    }
+
+    /**
+     * A committed word and its place in the phrase history, as one record.
+     */
+    public void appendPhraseWord(String word) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeByte(RECORD_PHRASE_WORD);
+            out.writeUTF(word);
+        } catch (IOException ignored) {
+            // In-memory stream
+        }
+        append(bytes.toByteArray());
+    }
+
+    public void appendPhraseBreak() {
+        append(new byte[] { RECORD_PHRASE_BREAK });
+    }
+
+    /**
+     * Word and word-pair counts of a bulk-learned text, as one record.
+     */
+    public void appendCounts(TextStatistics stats) {
+        final List<String> words = new ArrayList<>(stats.getWordCount());
+        final List<Integer> wordUses = new ArrayList<>(stats.getWordCount());
+        final List<String> pairs = new ArrayList<>(stats.getBigramCount() * 2);
+        final List<Integer> pairUses = new ArrayList<>(stats.getBigramCount());
+        stats.forEach(new TextStatistics.Visitor() {
+            @Override
+            public void visitWord(String word, int uses) {
+                words.add(word);
+                wordUses.add(uses);
+            }
+
+            @Override
+            public void visitBigram(String previous, String next, int uses) {
+                pairs.add(previous);
+                pairs.add(next);
+                pairUses.add(uses);
+            }
+        });
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(words.size() * 12 + pairs.size() * 10 + 16);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeByte(RECORD_COUNTS);
+            out.writeInt(words.size());
+            for (int i = 0; i < words.size(); i++) {
+                out.writeUTF(words.get(i));
+                out.writeInt(wordUses.get(i));
+            }
+            out.writeInt(pairUses.size());
+            for (int i = 0; i < pairUses.size(); i++) {
+                out.writeUTF(pairs.get(2 * i));
+                out.writeUTF(pairs.get(2 * i + 1));
+                out.writeInt(pairUses.get(i));
+            }
+        } catch (IOException ignored) {
+            // In-memory stream
+        }
+        append(bytes.toByteArray());
+    }
+
+    /**
+     * Closes the journal file when its owner is released. Later appends are dropped: another
+     * journal on the same directory may have taken over by then.
+     */
+    public synchronized void close() {
+        closeQuietly(journalOut);
+        journalOut = null;
+        closed = true;
+    }
+
+    private synchronized void append(byte[] payload) {
+        if (closed || journalOut == null) return;
+        byte[] record = new byte[4 + payload.length];
+        record[0] = (byte) (payload.length >>> 24);
+        record[1] = (byte) (payload.length >>> 16);
+        record[2] = (byte) (payload.length >>> 8);
+        record[3] = (byte) payload.length;
+        System.arraycopy(payload, 0, record, 4, payload.length);
+        try {
+            // One unbuffered write: the record reaches the kernel before we return
+            journalOut.write(record);
+            journalBytes += record.length;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // --- Compaction ---
+
+    public synchronized boolean needsCompaction() {
+        return journalBytes > COMPACTION_THRESHOLD;
+    }
+
+    /**
+     * Closes the current journal and starts a new one. Must be called while the owner's state
+     * is consistent with everything appended so far; returns the generation the snapshot covers.
+     */
+    public synchronized long rotate() {
+        long covered = generation;
+        if (closed) return covered;
+        closeQuietly(journalOut);
+        generation++;
+        journalBytes = 0;
+        openJournal();
+        return covered;
+    }
+
+    /**
+     * Writes a snapshot covering all journals up to 'covered' and deletes them.
+     * Runs off the typing path; the snapshot is replaced atomically via rename.
+     */
+    public void writeSnapshot(long covered, SnapshotWriter writer) {
+        File tmp = new File(dir, SNAPSHOT_NAME + ".tmp");
+        FileOutputStream fileOut = null;
+        try {
+            fileOut = new FileOutputStream(tmp);
+            writeSnapshot(fileOut, covered, writer);
+            fileOut.getFD().sync();
+            fileOut.close();
+            fileOut = null;
+
+            if (!tmp.renameTo(new File(dir, SNAPSHOT_NAME))) {
+                throw new IOException("Could not replace snapshot");
+            }
+            for (long gen : listJournals()) {
+                if (gen <= covered) journalFile(gen).delete();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            tmp.delete();
+        } finally {
+            closeQuietly(fileOut);
+        }
+    }
+
+    // --- Snapshot format ---
+
+    /**
+     * Writes a complete snapshot (header, owner payload, CRC32 of both) to 'out' and flushes it.
+     */
+    public static void writeSnapshot(OutputStream out, long covered, SnapshotWriter writer) throws IOException {
+        BufferedOutputStream buffered = new BufferedOutputStream(out, 64 * 1024);
+        CheckedOutputStream checked = new CheckedOutputStream(buffered, new CRC32());
+        DataOutputStream data = new DataOutputStream(checked);
+        data.writeInt(SNAPSHOT_MAGIC);
+        data.writeInt(SNAPSHOT_VERSION);
+        data.writeLong(covered);
+        writer.writeTo(data);
+        data.flush();
+
+        int crc = (int) checked.getChecksum().getValue();
+        buffered.write(crc >>> 24);
+        buffered.write(crc >>> 16);
+        buffered.write(crc >>> 8);
+        buffered.write(crc);
+        buffered.flush();
+    }
+
+    /**
+     * Checks that 'data' is a whole snapshot of the current version with an intact checksum.
+     */
+    public static void checkSnapshot(byte[] data) throws IOException {
+        if (data.length < 20 || readInt(data, 0) != SNAPSHOT_MAGIC) {
+            throw new IOException("Not a model snapshot");
+        }
+        int version = readInt(data, 4);
+        if (version != SNAPSHOT_VERSION) {
+            throw new IOException("Unsupported snapshot version " + version);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length - 4);
+        if ((int) crc.getValue() != readInt(data, data.length - 4)) {
+            throw new IOException("Snapshot checksum mismatch");
+        }
+    }
+
+    /**
+     * Verifies a snapshot held in memory, then hands its payload to 'reader'. Returns the
+     * generation it covers. Nothing is read from a snapshot that fails the check.
+     */
+    public static long readSnapshot(byte[] data, SnapshotReader reader) throws IOException {
+        checkSnapshot(data);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, 8, data.length - 12));
+        long covered = in.readLong();
+        reader.readFrom(in);
+        return covered;
+    }
+
+    /**
+     * Reads a whole file with one sequential read.
+     */
+    private static byte[] readFile(File file) throws IOException {
+        long length = file.length();
+        if (length > Integer.MAX_VALUE) throw new IOException("Snapshot too large");
+        byte[] data = new byte[(int) length];
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            in.readFully(data);
+        } finally {
+            closeQuietly(in);
+        }
+        return data;
+    }
+
+    private static int readInt(byte[] data, int offset) {
+        return ((data[offset] & 0xFF) << 24) | ((data[offset + 1] & 0xFF) << 16)
+                | ((data[offset + 2] & 0xFF) << 8) | (data[offset + 3] & 0xFF);
+    }
+
+    // --- Internals ---
+
+    private void replay(File file, Replayer replayer) {
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException end) {
+                    break;
+                }
+                if (length <= 0 || length > 16 * 1024 * 1024) break;
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                applyRecord(payload, replayer);
+            }
+        } catch (IOException e) {
+            // Torn tail from a crash mid-write: everything before it was applied
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private void applyRecord(byte[] payload, Replayer replayer) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte type = in.readByte();
+        switch (type) {
+            case RECORD_WORD:
+                replayer.onWord(in.readUTF());
+                break;
+            case RECORD_WORDS:
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) replayer.onWord(in.readUTF());
+                break;
+            case RECORD_BIGRAM:
+                replayer.onBigram(in.readUTF(), in.readUTF());
+                break;
+            case RECORD_TRIGRAM:
+                replayer.onTrigram(in.readUTF(), in.readUTF(), in.readUTF());
+                break;
+            case RECORD_COUNTS:
+                int wordCount = in.readInt();
+                for (int i = 0; i < wordCount; i++) replayer.onWordUses(in.readUTF(), in.readInt());
+                int pairCount = in.readInt();
+                for (int i = 0; i < pairCount; i++) replayer.onBigramUses(in.readUTF(), in.readUTF(), in.readInt());
+                break;
+            case RECORD_PHRASE_WORD:
+                replayer.onPhraseWord(in.readUTF());
+                break;
+            case RECORD_PHRASE_BREAK:
+                replayer.onPhraseBreak();
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void openJournal() {
+        try {
+            journalOut = new FileOutputStream(journalFile(generation), true);
+        } catch (IOException e) {
+            e.printStackTrace();
+            journalOut = null;
+        }
+    }
+
+    private File journalFile(long gen) {
+        return new File(dir, JOURNAL_PREFIX + gen);
+    }
+
+    private List<Long> listJournals() {
+        List<Long> generations = new ArrayList<>();
+        String[] names = dir.list();
+        if (names == null) return generations;
+        for (String name : names) {
+            if (!name.startsWith(JOURNAL_PREFIX)) continue;
+            try {
+                generations.add(Long.parseLong(name.substring(JOURNAL_PREFIX.length())));
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        Collections.sort(generations);
+        return generations;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) return;
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
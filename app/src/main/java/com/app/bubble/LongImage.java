@@ -0,0 +1,181 @@
+package com.app.bubble;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * A stitched capture of any length, stored as TILE_HEIGHT tall tiles (filled by StreamingStitcher).
+ * At most MAX_RESIDENT_TILES tiles stay in memory: with a spill directory, older full tiles are
+ * written there as PNG and read back only while a window over them is rendered, so memory use
+ * does not grow with the capture. Blank rows are remembered, so text can be cut between lines.
+ * Not thread-safe.
+ */
+public class LongImage {
+
+    public static final int TILE_HEIGHT = 1024;
+    private static final int MAX_RESIDENT_TILES = 4;
+
+    private final int width;
+    private final File spillDir; // null: every tile stays in memory
+    private final List<Bitmap> tiles = new ArrayList<>(); // null once spilled
+    private final BitSet blankRows = new BitSet();
+    private int height = 0;
+    private int resident = 0;
+    private int spilled = 0; // Tiles are spilled oldest first
+
+    public LongImage(int width, File spillDir) {
+        this.width = width;
+        this.spillDir = spillDir;
+        if (spillDir != null) spillDir.mkdirs();
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Copies the rows [from, to) of a frame to the end of the image, filling the last tile first.
+     * 'blank' flags the frame's blank rows, to remember them.
+     * May throw OutOfMemoryError when a new tile cannot be allocated.
+     */
+    void appendRows(Bitmap frame, int from, int to, boolean[] blank) {
+        int copyWidth = Math.min(width, frame.getWidth());
+        int y = from;
+        while (y < to) {
+            int tileRow = height % TILE_HEIGHT;
+            if (tileRow == 0) {
+                spillIfNeeded();
+                tiles.add(Bitmap.createBitmap(width, TILE_HEIGHT, Bitmap.Config.ARGB_8888));
+                resident++;
+            }
+            int rows = Math.min(to - y, TILE_HEIGHT - tileRow);
+            Canvas canvas = new Canvas(tiles.get(tiles.size() - 1));
+            canvas.drawBitmap(frame, new Rect(0, y, copyWidth, y + rows),
+                    new Rect(0, tileRow, copyWidth, tileRow + rows), null);
+            for (int r = 0; r < rows; r++) {
+                if (blank[y + r]) blankRows.set(height + r);
+            }
+            y += rows;
+            height += rows;
+        }
+    }
+
+    /**
+     * Drops the rows from 'newHeight' on, e.g. a footer about to be appended again below new rows.
+     * Rows already spilled to disk are kept.
+     */
+    void truncate(int newHeight) {
+        newHeight = Math.max(newHeight, spilled * TILE_HEIGHT);
+        if (newHeight >= height) return;
+        height = newHeight;
+        blankRows.clear(height, blankRows.length());
+        int needed = (height + TILE_HEIGHT - 1) / TILE_HEIGHT;
+        while (tiles.size() > needed) {
+            tiles.remove(tiles.size() - 1).recycle();
+            resident--;
+        }
+    }
+
+    /**
+     * Writes the oldest resident tiles to disk until there is room for one more.
+     * A tile that cannot be written stays in memory.
+     */
+    private void spillIfNeeded() {
+        if (spillDir == null) return;
+        while (resident >= MAX_RESIDENT_TILES && spilled < tiles.size()) {
+            Bitmap tile = tiles.get(spilled);
+            FileOutputStream out = null;
+            try {
+                out = new FileOutputStream(tileFile(spilled));
+                if (!tile.compress(Bitmap.CompressFormat.PNG, 100, out)) return;
+            } catch (IOException e) {
+                e.printStackTrace();
+                return;
+            } finally {
+                if (out != null) {
+                    try {
+                        out.close();
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+            tile.recycle();
+            tiles.set(spilled, null);
+            spilled++;
+            resident--;
+        }
+    }
+
+    private File tileFile(int index) {
+        return new File(spillDir, "tile" + index + ".png");
+    }
+
+    /**
+     * Copies the rows [top, top + rows) into a new bitmap, e.g. the part of the capture on screen
+     * in a preview, or one OCR segment. Only the tiles under the window are read.
+     * Returns null for an empty window.
+     */
+    public Bitmap renderWindow(int top, int rows) {
+        top = Math.max(0, top);
+        rows = Math.min(rows, height - top);
+        if (rows <= 0) return null;
+
+        Bitmap window = Bitmap.createBitmap(width, rows, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(window);
+        for (int index = top / TILE_HEIGHT; index * TILE_HEIGHT < top + rows; index++) {
+            Bitmap tile = tiles.get(index);
+            boolean loaded = tile == null;
+            if (loaded) {
+                tile = BitmapFactory.decodeFile(tileFile(index).getPath());
+                if (tile == null) continue; // Unreadable: the window keeps a gap
+            }
+            int tileTop = index * TILE_HEIGHT;
+            int from = Math.max(top, tileTop);
+            int to = Math.min(top + rows, tileTop + TILE_HEIGHT);
+            canvas.drawBitmap(tile, new Rect(0, from - tileTop, width, to - tileTop),
+                    new Rect(0, from - top, width, to - top), null);
+            if (loaded) tile.recycle();
+        }
+        return window;
+    }
+
+    /**
+     * End of a segment starting at 'from' and at most 'maxRows' tall: the last blank row in its
+     * second half when there is one, so a line of text is not cut in two.
+     */
+    public int findCut(int from, int maxRows) {
+        int end = Math.min(height, from + maxRows);
+        if (end == height) return end;
+        int blank = blankRows.previousSetBit(end - 1);
+        return blank > from + maxRows / 2 ? blank : end;
+    }
+
+    /**
+     * Frees the tiles and deletes the spilled ones.
+     */
+    public void release() {
+        for (int i = 0; i < tiles.size(); i++) {
+            Bitmap tile = tiles.get(i);
+            if (tile != null) tile.recycle();
+            else tileFile(i).delete();
+        }
+        tiles.clear();
+        blankRows.clear();
+        height = 0;
+        resident = 0;
+        spilled = 0;
+    }
+}
@@ -0,0 +1,130 @@
+package com.app.bubble;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from long to int with linear probing, stored in two flat arrays.
+ * Used for n-gram counts keyed by packed word IDs, so an entry costs a few bytes and no objects.
+ * Keys must not be negative (-1 marks an empty slot). Not thread-safe.
+ */
+public class LongIntMap {
+
+    public interface EntryVisitor {
+        void visit(long key, int value);
+    }
+
+    private static final long EMPTY = -1L;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+    private int mask;
+
+    public LongIntMap() {
+        this(8);
+    }
+
+    public LongIntMap(int expectedSize) {
+        int capacity = 16;
+        while (capacity * 3 / 4 < expectedSize) capacity <<= 1;
+        allocate(capacity);
+    }
+
+    public LongIntMap(LongIntMap other) {
+        keys = other.keys.clone();
+        values = other.values.clone();
+        size = other.size;
+        mask = other.mask;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(long key) {
+        return keys[slot(key)] == key;
+    }
+
+    /**
+     * Value for the key, or 'missing' if it is absent.
+     */
+    public int get(long key, int missing) {
+        int i = slot(key);
+        return keys[i] == key ? values[i] : missing;
+    }
+
+    public void put(long key, int value) {
+        int i = slot(key);
+        if (keys[i] != key) {
+            keys[i] = key;
+            if (++size > (mask + 1) * 3 / 4) {
+                values[i] = value;
+                grow();
+                return;
+            }
+        }
+        values[i] = value;
+    }
+
+    /**
+     * Adds 'delta' to the value of the key (absent counts as 0) and returns the new value.
+     */
+    public int add(long key, int delta) {
+        int value = get(key, 0) + delta;
+        put(key, value);
+        return value;
+    }
+
+    public void putAll(LongIntMap other) {
+        for (int i = 0; i < other.keys.length; i++) {
+            if (other.keys[i] != EMPTY) put(other.keys[i], other.values[i]);
+        }
+    }
+
+    public void forEach(EntryVisitor visitor) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) visitor.visit(keys[i], values[i]);
+        }
+    }
+
+    // --- Internals ---
+
+    /**
+     * Slot holding the key, or the empty slot where it would be inserted.
+     */
+    private int slot(long key) {
+        int i = hash(key) & mask;
+        while (keys[i] != EMPTY && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == EMPTY) continue;
+            int j = slot(oldKeys[i]);
+            keys[j] = oldKeys[i];
+            values[j] = oldValues[i];
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        values = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
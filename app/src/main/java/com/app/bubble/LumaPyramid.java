@@ -0,0 +1,400 @@
+package com.app.bubble;
+
+import android.graphics.Bitmap;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Grayscale summary of a frame, for the coarse-to-fine overlap search of StreamingStitcher.
+ * Level 0 keeps every row, each reduced to the average luminance of CELL_WIDTH pixel wide cells;
+ * every further level halves the rows by averaging pairs. The offset between two frames is first
+ * estimated on the smallest level (a few hundred values per frame), then refined on level 0 only
+ * near the best estimates. Rows are compared with a tolerance instead of for equality, so
+ * anti-aliasing and sub-pixel scroll jitter do not break a match.
+ * Frames of MIN_PARALLEL_ROWS rows or more are searched on ImageStitcher's ForkJoinPool: the coarse
+ * shifts in slices, and the refinement of each candidate as its own task.
+ * Immutable once built.
+ */
+public class LumaPyramid {
+
+    private static final int CELL_WIDTH = 8;
+    // Luminance of every n-th pixel of a row
+    private static final int PIXEL_STEP = 4;
+    private static final int STRIP_ROWS = 32;
+    // Rows are halved while the next level keeps at least this many
+    private static final int MIN_LEVEL_ROWS = 96;
+    // A row whose cells differ by at most this much is blank: it matches too many places
+    private static final int BLANK_SPREAD = 3;
+    // Offsets kept from the coarse level for refinement
+    private static final int CANDIDATES = 3;
+    // Mean difference per cell of an overlap at which it stops being a match
+    private static final float MAX_MEAN_DIFF = 24f;
+    // An overlap needs this many non-blank rows (at full resolution) to count as evidence
+    private static final int MIN_EVIDENCE_ROWS = 8;
+    // Offsets closer than this to the best one are the same match, not a rival
+    private static final int RIVAL_DISTANCE = 3;
+    // Frames with fewer rows are searched on the calling thread alone
+    private static final int MIN_PARALLEL_ROWS = 512;
+    // Slices of coarse shifts per worker thread, to balance the load (smaller shifts cost more)
+    private static final int TASKS_PER_THREAD = 4;
+
+    /**
+     * Rows of one level, 'cells' values each.
+     */
+    private static final class Level {
+        final byte[] values;
+        final int rows;
+        final boolean[] blank;
+        // nonBlank[k]: number of non-blank rows among the first k
+        final int[] nonBlank;
+
+        Level(byte[] values, int rows, int cells) {
+            this.values = values;
+            this.rows = rows;
+            blank = new boolean[rows];
+            nonBlank = new int[rows + 1];
+            for (int row = 0; row < rows; row++) {
+                int min = 255;
+                int max = 0;
+                for (int c = 0; c < cells; c++) {
+                    int value = values[row * cells + c] & 0xFF;
+                    min = Math.min(min, value);
+                    max = Math.max(max, value);
+                }
+                blank[row] = max - min <= BLANK_SPREAD;
+                nonBlank[row + 1] = nonBlank[row] + (blank[row] ? 0 : 1);
+            }
+        }
+    }
+
+    private final int cells;
+    private final int height;
+    private final Level[] levels;
+    // The coarsest level again, starting half a coarse row down: any shift between two frames is
+    // then within a quarter of a coarse row of one of the two, so rows are never fully out of phase
+    private final Level halfShifted;
+
+    private LumaPyramid(int cells, byte[] level0, int height) {
+        this.cells = cells;
+        this.height = height;
+
+        int levelCount = 1;
+        while ((height >> levelCount) >= MIN_LEVEL_ROWS) levelCount++;
+        levels = new Level[levelCount];
+        levels[0] = new Level(level0, height, cells);
+        for (int l = 1; l < levelCount; l++) {
+            Level above = levels[l - 1];
+            int rows = above.rows / 2;
+            byte[] values = new byte[rows * cells];
+            for (int i = 0; i < values.length; i++) {
+                // Cell i % cells of rows 2 * (i / cells) and the one below
+                int a = above.values[2 * i - i % cells] & 0xFF;
+                int b = above.values[2 * i - i % cells + cells] & 0xFF;
+                values[i] = (byte) ((a + b + 1) >> 1);
+            }
+            levels[l] = new Level(values, rows, cells);
+        }
+
+        int scale = 1 << (levelCount - 1);
+        if (scale == 1) {
+            halfShifted = null;
+            return;
+        }
+        int rows = (height - scale / 2) / scale;
+        byte[] values = new byte[rows * cells];
+        for (int row = 0; row < rows; row++) {
+            int first = row * scale + scale / 2;
+            for (int c = 0; c < cells; c++) {
+                int sum = 0;
+                for (int y = first; y < first + scale; y++) sum += level0[y * cells + c] & 0xFF;
+                values[row * cells + c] = (byte) ((sum + scale / 2) / scale);
+            }
+        }
+        halfShifted = new Level(values, rows, cells);
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Blank rows of the frame, one flag per row.
+     */
+    public boolean[] getBlankRows() {
+        return levels[0].blank;
+    }
+
+    /**
+     * Builds the pyramid of the first 'width' pixels of every row.
+     */
+    public static LumaPyramid build(Bitmap bitmap, int width) {
+        int height = bitmap.getHeight();
+        int cells = Math.max(1, (width + CELL_WIDTH - 1) / CELL_WIDTH);
+
+        byte[] level0 = new byte[height * cells];
+        int[] strip = new int[width * Math.min(STRIP_ROWS, Math.max(1, height))];
+        for (int y = 0; y < height; y += STRIP_ROWS) {
+            int stripRows = Math.min(STRIP_ROWS, height - y);
+            bitmap.getPixels(strip, 0, width, 0, y, width, stripRows);
+            for (int r = 0; r < stripRows; r++) {
+                int offset = r * width;
+                int base = (y + r) * cells;
+                for (int c = 0; c < cells; c++) {
+                    int end = offset + Math.min(width, (c + 1) * CELL_WIDTH);
+                    int sum = 0;
+                    int count = 0;
+                    for (int i = offset + c * CELL_WIDTH; i < end; i += PIXEL_STEP) {
+                        int color = strip[i];
+                        // Rec. 601 luma, in 0..255
+                        sum += (77 * ((color >> 16) & 0xFF) + 150 * ((color >> 8) & 0xFF) + 29 * (color & 0xFF)) >> 8;
+                        count++;
+                    }
+                    level0[base + c] = (byte) (sum / count);
+                }
+            }
+        }
+        return new LumaPyramid(cells, level0, height);
+    }
+
+    /**
+     * Pyramid of the rows [from, to) only.
+     */
+    public LumaPyramid slice(int from, int to) {
+        if (from == 0 && to == height) return this;
+        return new LumaPyramid(cells, Arrays.copyOfRange(levels[0].values, from * cells, to * cells), to - from);
+    }
+
+    /**
+     * Finds how many rows at the bottom of 'top' reappear at the top of 'bottom'.
+     * Shifts between the frames are scored on the coarsest level, in steps of half a coarse row
+     * (see score). The CANDIDATES best are each refined on level 0 within a coarse row, where the
+     * offset with the smallest mean difference wins; the candidate that then scores best is the
+     * overlap. Confidence drops when its match is loose or when another candidate fits almost as
+     * well (repetitive content).
+     * Both pyramids must have been built with the same width.
+     */
+    public static ImageStitcher.Overlap findOverlap(LumaPyramid top, LumaPyramid bottom) {
+        int level = Math.min(top.levels.length, bottom.levels.length) - 1;
+        int scale = 1 << level;
+        ForkJoinPool pool = Math.min(top.height, bottom.height) >= MIN_PARALLEL_ROWS
+                ? ImageStitcher.getSearchPool() : null;
+
+        // Shift u, in half coarse rows: 'bottom' starts u * scale / 2 rows down 'top'
+        float[] coarse = new float[2 * top.levels[level].rows];
+        if (pool == null) {
+            scoreShifts(top, bottom, level, 0, coarse.length, coarse);
+        } else {
+            int sliceShifts = Math.max(1, coarse.length / (pool.getParallelism() * TASKS_PER_THREAD));
+            pool.invoke(new ShiftTask(top, bottom, level, 0, coarse.length, sliceShifts, coarse));
+        }
+
+        int[] estimates = new int[CANDIDATES];
+        int found = 0;
+        for (; found < CANDIDATES; found++) {
+            int u = -1;
+            for (int k = 0; k < coarse.length; k++) {
+                if (coarse[k] > 0f && (u < 0 || coarse[k] > coarse[u])) u = k;
+            }
+            if (u < 0) break;
+            // Neighbouring shifts are the same estimate
+            for (int k = Math.max(0, u - 2); k <= Math.min(coarse.length - 1, u + 2); k++) coarse[k] = 0f;
+            estimates[found] = top.height - u * scale / 2;
+        }
+
+        int[] bestRows = new int[found];
+        float[] bestDiff = new float[found];
+        if (pool == null) {
+            for (int i = 0; i < found; i++) refine(top, bottom, scale, estimates, i, bestRows, bestDiff);
+        } else {
+            pool.invoke(new RefineTask(top, bottom, scale, estimates, 0, found, bestRows, bestDiff));
+        }
+
+        float[] score = new float[found];
+        int best = -1;
+        for (int i = 0; i < found; i++) {
+            if (bestRows[i] < 0) continue;
+            score[i] = score(bottom.levels[0].nonBlank[bestRows[i]], bestDiff[i]);
+            if (best < 0 || score[i] > score[best]) best = i;
+        }
+        if (best < 0 || score[best] <= 0f) return ImageStitcher.Overlap.NONE;
+
+        float rival = 0f;
+        for (int i = 0; i < found; i++) {
+            if (bestRows[i] > 0 && Math.abs(bestRows[i] - bestRows[best]) > RIVAL_DISTANCE) {
+                rival = Math.max(rival, score[i]);
+            }
+        }
+        float fit = 1f - bestDiff[best] / MAX_MEAN_DIFF;
+        return new ImageStitcher.Overlap(bestRows[best], fit * (1f - rival / score[best]));
+    }
+
+    /**
+     * Scores the coarse shifts [from, to) into coarse[] (see findOverlap). Only reads the pyramids,
+     * so slices can run at once.
+     */
+    private static void scoreShifts(LumaPyramid top, LumaPyramid bottom, int level, int from, int to,
+                                    float[] coarse) {
+        int minCoarseEvidence = Math.max(2, MIN_EVIDENCE_ROWS >> level);
+        Level coarseTop = top.levels[level];
+        Level[] coarseBottom = {bottom.levels[level], level == 0 ? null : bottom.halfShifted};
+        for (int u = from; u < to; u++) {
+            Level phase = coarseBottom[u % 2];
+            if (phase == null) continue;
+            int first = (u + 1) / 2; // Row of 'top' facing the first row of this phase of 'bottom'
+            int count = Math.min(coarseTop.rows - first, phase.rows);
+            if (count <= 0) continue;
+            float diff = meanDiff(top.cells, coarseTop, first, phase, count, minCoarseEvidence, MAX_MEAN_DIFF);
+            coarse[u] = score(phase.nonBlank[count], diff);
+        }
+    }
+
+    /**
+     * Tries the offsets within a coarse row of estimates[i] on level 0 and keeps the one with the
+     * smallest mean difference in bestRows[i] (-1 for none) and bestDiff[i].
+     */
+    private static void refine(LumaPyramid top, LumaPyramid bottom, int scale, int[] estimates, int i,
+                               int[] bestRows, float[] bestDiff) {
+        int maxRows = Math.min(top.height, bottom.height);
+        int bestOverlap = -1;
+        float best = MAX_MEAN_DIFF;
+        for (int step = 0; step <= scale; step++) {
+            // Nearest offsets first, so the early exit in meanDiff kicks in sooner
+            for (int sign = -1; sign <= 1; sign += 2) {
+                if (step == 0 && sign > 0) continue;
+                int overlap = estimates[i] + sign * step;
+                if (overlap < 1 || overlap > maxRows) continue;
+                float diff = meanDiff(top.cells, top.levels[0], top.height - overlap, bottom.levels[0], overlap,
+                        MIN_EVIDENCE_ROWS, best);
+                if (diff < best) {
+                    best = diff;
+                    bestOverlap = overlap;
+                }
+            }
+        }
+        bestRows[i] = bestOverlap;
+        bestDiff[i] = best;
+    }
+
+    /**
+     * Scores the coarse shifts [from, to): directly when few, otherwise by splitting in two.
+     * Slices write disjoint parts of coarse[].
+     */
+    private static final class ShiftTask extends RecursiveAction {
+        private final LumaPyramid top;
+        private final LumaPyramid bottom;
+        private final int level;
+        private final int from;
+        private final int to;
+        private final int sliceShifts;
+        private final float[] coarse;
+
+        ShiftTask(LumaPyramid top, LumaPyramid bottom, int level, int from, int to, int sliceShifts,
+                  float[] coarse) {
+            this.top = top;
+            this.bottom = bottom;
+            this.level = level;
+            this.from = from;
+            this.to = to;
+            this.sliceShifts = sliceShifts;
+            this.coarse = coarse;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= sliceShifts) {
+                scoreShifts(top, bottom, level, from, to, coarse);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ShiftTask(top, bottom, level, from, middle, sliceShifts, coarse),
+                    new ShiftTask(top, bottom, level, middle, to, sliceShifts, coarse));
+        }
+    }
+
+    /**
+     * Refines the candidates [from, to), one task each. Candidates write their own entries only.
+     */
+    private static final class RefineTask extends RecursiveAction {
+        private final LumaPyramid top;
+        private final LumaPyramid bottom;
+        private final int scale;
+        private final int[] estimates;
+        private final int from;
+        private final int to;
+        private final int[] bestRows;
+        private final float[] bestDiff;
+
+        RefineTask(LumaPyramid top, LumaPyramid bottom, int scale, int[] estimates, int from, int to,
+                   int[] bestRows, float[] bestDiff) {
+            this.top = top;
+            this.bottom = bottom;
+            this.scale = scale;
+            this.estimates = estimates;
+            this.from = from;
+            this.to = to;
+            this.bestRows = bestRows;
+            this.bestDiff = bestDiff;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= 1) {
+                if (from < to) refine(top, bottom, scale, estimates, from, bestRows, bestDiff);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new RefineTask(top, bottom, scale, estimates, from, middle, bestRows, bestDiff),
+                    new RefineTask(top, bottom, scale, estimates, middle, to, bestRows, bestDiff));
+        }
+    }
+
+    /**
+     * Mean cell difference between a row of each frame (at full resolution).
+     */
+    static float rowDiff(LumaPyramid a, int rowA, LumaPyramid b, int rowB) {
+        int cells = a.cells;
+        byte[] valuesA = a.levels[0].values;
+        byte[] valuesB = b.levels[0].values;
+        int sum = 0;
+        for (int c = 0; c < cells; c++) {
+            sum += Math.abs((valuesA[rowA * cells + c] & 0xFF) - (valuesB[rowB * cells + c] & 0xFF));
+        }
+        return sum / (float) cells;
+    }
+
+    /**
+     * Like matching rows in ImageStitcher: the non-blank rows of an overlap, weighted by how well
+     * they fit. 0 for no match.
+     */
+    private static float score(int evidence, float meanDiff) {
+        return meanDiff >= MAX_MEAN_DIFF ? 0f : evidence * (1f - meanDiff / MAX_MEAN_DIFF);
+    }
+
+    /**
+     * Mean cell difference between rows [shift, shift + count) of 'top' and rows [0, count) of
+     * 'bottom', over the non-blank rows of 'bottom'. Float.MAX_VALUE when fewer than 'minEvidence'
+     * rows count, or as soon as the mean can no longer get below 'bound'.
+     */
+    private static float meanDiff(int cells, Level top, int shift, Level bottom, int count,
+                                  int minEvidence, float bound) {
+        int evidence = bottom.nonBlank[count];
+        if (evidence < minEvidence) return Float.MAX_VALUE;
+
+        byte[] a = top.values;
+        byte[] b = bottom.values;
+        long limit = (long) (bound * cells * evidence);
+        long sum = 0;
+        for (int j = 0; j < count; j++) {
+            if (bottom.blank[j]) continue;
+            int ai = (shift + j) * cells;
+            int bi = j * cells;
+            for (int c = 0; c < cells; c++) {
+                sum += Math.abs((a[ai + c] & 0xFF) - (b[bi + c] & 0xFF));
+            }
+            if (sum >= limit) return Float.MAX_VALUE;
+        }
+        return sum / (float) (cells * evidence);
+    }
+}
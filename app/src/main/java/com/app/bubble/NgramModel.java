@@ -0,0 +1,376 @@
+package com.app.bubble;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Immutable unigram / bigram / trigram model over interned word IDs, scored with stupid backoff:
+ *   S(w | a b) = c(a b w) / c(a b)                  if the trigram was seen
+ *              = 0.4 * c(b w) / c(b as history)     else if the bigram was seen
+ *              = 0.16 * c(w) / total                otherwise
+ *
+ * Every count lives in one primitive table under a packed key (2 bit kind + 3 x 20 bit IDs), and
+ * every context (nothing, one word, two words) keeps its MAX_RANKED most frequent followers in a
+ * second table, so a prediction scores at most 3 x MAX_RANKED candidates whatever the model size.
+ * Bigrams and trigrams are capped at MAX_NGRAMS entries; past that the rarest ones are pruned.
+ */
+public final class NgramModel {
+
+    // Followers kept per context, one more than the candidate strip shows
+    public static final int MAX_RANKED = 6;
+
+    // Words with a larger ID are left out of the n-gram tables
+    public static final int MAX_ID = (1 << 20) - 1;
+
+    // Hard memory budget: bigram + trigram entries (a table entry costs ~16-24 bytes)
+    private static final int MAX_NGRAMS = 150000;
+
+    private static final double BACKOFF = 0.4;
+
+    // Key kinds (top bits)
+    private static final long UNIGRAM = 0L;
+    private static final long BIGRAM = 1L << 60;
+    private static final long TRIGRAM = 2L << 60;
+    private static final long HISTORY = 3L << 60;
+    private static final long KIND_MASK = 3L << 60;
+    private static final int NONE = 0;
+
+    private final NgramTable counts;
+    private final NgramTable ranks;
+    private final long totalUses;
+    private final int ngramCount;
+
+    public NgramModel() {
+        this(new NgramTable(), new NgramTable(), 0, 0);
+    }
+
+    private NgramModel(NgramTable counts, NgramTable ranks, long totalUses, int ngramCount) {
+        this.counts = counts;
+        this.ranks = ranks;
+        this.totalUses = totalUses;
+        this.ngramCount = ngramCount;
+    }
+
+    public Editor edit() {
+        return new Editor(this);
+    }
+
+    public int getUnigramCount(int id) {
+        if (id < 0 || id > MAX_ID) return 0;
+        return counts.get(key(UNIGRAM, NONE, NONE, id), 0);
+    }
+
+    /**
+     * Fills 'out' with the IDs most likely to follow 'beforePrevious previous' (either may be -1),
+     * best first, and returns how many were written.
+     */
+    public int predict(int beforePrevious, int previous, int[] out) {
+        if (!valid(previous)) {
+            previous = -1;
+            beforePrevious = -1;
+        } else if (!valid(beforePrevious)) {
+            beforePrevious = -1;
+        }
+
+        int[] candidates = new int[3 * MAX_RANKED];
+        int n = 0;
+        if (beforePrevious >= 0) n = collectRanked(key(TRIGRAM, beforePrevious, previous, NONE), candidates, n);
+        if (previous >= 0) n = collectRanked(key(BIGRAM, NONE, previous, NONE), candidates, n);
+        // Repeating the previous word is only suggested when the model has seen it
+        int beforeUnigrams = n;
+        n = collectRanked(key(UNIGRAM, NONE, NONE, NONE), candidates, n);
+        for (int i = beforeUnigrams; i < n; i++) {
+            if (candidates[i] == previous) candidates[i--] = candidates[--n];
+        }
+
+        // Partial selection sort: k is tiny
+        double[] scores = new double[n];
+        for (int i = 0; i < n; i++) scores[i] = score(beforePrevious, previous, candidates[i]);
+        int found = 0;
+        while (found < out.length && found < n) {
+            int best = found;
+            for (int i = found + 1; i < n; i++) {
+                if (scores[i] > scores[best]) best = i;
+            }
+            swap(candidates, scores, found, best);
+            out[found] = candidates[found];
+            found++;
+        }
+        return found;
+    }
+
+    private double score(int beforePrevious, int previous, int id) {
+        if (beforePrevious >= 0) {
+            int trigram = counts.get(key(TRIGRAM, beforePrevious, previous, id), 0);
+            if (trigram > 0) {
+                int context = counts.get(key(BIGRAM, NONE, beforePrevious, previous), 0);
+                return trigram / (double) Math.max(trigram, context);
+            }
+        }
+        if (previous >= 0) {
+            int bigram = counts.get(key(BIGRAM, NONE, previous, id), 0);
+            if (bigram > 0) {
+                int history = counts.get(key(HISTORY, NONE, NONE, previous), 0);
+                return BACKOFF * bigram / Math.max(bigram, history);
+            }
+        }
+        int unigram = counts.get(key(UNIGRAM, NONE, NONE, id), 0);
+        return BACKOFF * BACKOFF * unigram / Math.max(1L, totalUses);
+    }
+
+    private int collectRanked(long context, int[] into, int n) {
+        for (int rank = 0; rank < MAX_RANKED; rank++) {
+            int id = ranks.get(context | rank, -1);
+            if (id < 0) break;
+            if (!contains(into, n, id)) into[n++] = id;
+        }
+        return n;
+    }
+
+    /**
+     * Builds the next version. Not thread-safe: used by the single model writer.
+     */
+    public static final class Editor {
+
+        private final NgramModel base;
+        private final LongIntMap countChanges = new LongIntMap();
+        private final LongIntMap rankChanges = new LongIntMap();
+        private long addedUses;
+        private int addedNgrams;
+
+        private Editor(NgramModel base) {
+            this.base = base;
+        }
+
+        public void addUnigram(int id, int uses) {
+            if (!valid(id)) return;
+            addedUses += uses;
+            increment(key(UNIGRAM, NONE, NONE, id), uses);
+        }
+
+        public void addBigram(int previous, int next, int uses) {
+            if (!valid(previous) || !valid(next)) return;
+            increment(key(HISTORY, NONE, NONE, previous), uses);
+            increment(key(BIGRAM, NONE, previous, next), uses);
+        }
+
+        public void addTrigram(int first, int second, int third, int uses) {
+            if (!valid(first) || !valid(second) || !valid(third)) return;
+            increment(key(TRIGRAM, first, second, third), uses);
+        }
+
+        public NgramModel publish() {
+            NgramModel next = build();
+            return next.ngramCount > MAX_NGRAMS ? next.pruned() : next;
+        }
+
+        private NgramModel build() {
+            return new NgramModel(base.counts.plus(countChanges), base.ranks.plus(rankChanges),
+                    base.totalUses + addedUses, base.ngramCount + addedNgrams);
+        }
+
+        private void increment(long key, int uses) {
+            int old = count(key);
+            int count = old + uses;
+            countChanges.put(key, count);
+
+            long kind = key & KIND_MASK;
+            if (kind == HISTORY) return;
+            if (old == 0 && kind != UNIGRAM) addedNgrams++;
+            rank(key & ~(long) MAX_ID, (int) (key & MAX_ID), count);
+        }
+
+        /**
+         * Moves 'id' to its place among the followers of 'context'. Counts only grow, so only the
+         * changed follower can move. Ties go to the most recent one.
+         */
+        private void rank(long context, int id, int count) {
+            int[] ranked = new int[MAX_RANKED + 1];
+            int n = 0;
+            for (int rank = 0; rank < MAX_RANKED; rank++) {
+                int other = rankedAt(context | rank);
+                if (other < 0) break;
+                if (other != id) ranked[n++] = other;
+            }
+
+            int at = 0;
+            while (at < n && count(context | ranked[at]) > count) at++;
+            if (at == MAX_RANKED) return;
+
+            System.arraycopy(ranked, at, ranked, at + 1, n - at);
+            ranked[at] = id;
+            n = Math.min(n + 1, MAX_RANKED);
+            for (int rank = at; rank < n; rank++) {
+                rankChanges.put(context | rank, ranked[rank]);
+            }
+        }
+
+        private int count(long key) {
+            if (countChanges.containsKey(key)) return countChanges.get(key, 0);
+            return base.counts.get(key, 0);
+        }
+
+        private int rankedAt(long key) {
+            if (rankChanges.containsKey(key)) return rankChanges.get(key, -1);
+            return base.ranks.get(key, -1);
+        }
+    }
+
+    // --- Memory budget ---
+
+    /**
+     * Drops the rarest bigrams and trigrams until 3/4 of the budget is used, keeping all unigram
+     * and history counts. Runs on the writer thread, rarely: cost is linear in the model size.
+     */
+    private NgramModel pruned() {
+        final int[] histogram = new int[64];
+        counts.forEach(new LongIntMap.EntryVisitor() {
+            @Override
+            public void visit(long key, int value) {
+                if (isNgram(key)) histogram[Math.min(value, histogram.length - 1)]++;
+            }
+        });
+        int threshold = 0;
+        int kept = ngramCount;
+        while (kept > MAX_NGRAMS * 3 / 4 && threshold < histogram.length - 1) {
+            threshold++;
+            kept -= histogram[threshold];
+        }
+
+        final int cutoff = threshold;
+        final Editor rebuilt = new Editor(new NgramModel(new NgramTable(), new NgramTable(), totalUses, 0));
+        counts.forEach(new LongIntMap.EntryVisitor() {
+            @Override
+            public void visit(long key, int value) {
+                if (!isNgram(key)) {
+                    rebuilt.increment(key, value);
+                } else if (value > cutoff) {
+                    rebuilt.increment(key, value);
+                }
+            }
+        });
+        return rebuilt.build();
+    }
+
+    /**
+     * Copy for a trimmed vocabulary: word IDs are translated through 'idMap' (entries with a word
+     * mapped to -1 are dropped) and every count is divided by 2^halvings. Unigrams of kept words
+     * stay at least 1; other entries that decay to 0 are dropped. Cost is linear in the model size.
+     */
+    public NgramModel rebuilt(final int[] idMap, final int halvings) {
+        final Editor rebuilt = new Editor(new NgramModel());
+        counts.forEach(new LongIntMap.EntryVisitor() {
+            @Override
+            public void visit(long key, int value) {
+                long kind = key & KIND_MASK;
+                int c = remap(idMap, (int) key & MAX_ID);
+                if (c < 0) return;
+                int decayed = value >> Math.min(halvings, 31);
+
+                if (kind == UNIGRAM) {
+                    rebuilt.addUnigram(c, Math.max(1, decayed));
+                    return;
+                }
+                if (decayed == 0) return;
+                if (kind == HISTORY) {
+                    rebuilt.increment(key(HISTORY, NONE, NONE, c), decayed);
+                    return;
+                }
+                int b = remap(idMap, (int) (key >>> 20) & MAX_ID);
+                if (b < 0) return;
+                if (kind == BIGRAM) {
+                    rebuilt.increment(key(BIGRAM, NONE, b, c), decayed);
+                    return;
+                }
+                int a = remap(idMap, (int) (key >>> 40) & MAX_ID);
+                if (a >= 0) rebuilt.increment(key(TRIGRAM, a, b, c), decayed);
+            }
+        });
+        return rebuilt.publish();
+    }
+
+    private static boolean isNgram(long key) {
+        long kind = key & KIND_MASK;
+        return kind == BIGRAM || kind == TRIGRAM;
+    }
+
+    // --- Persistence ---
+
+    /**
+     * Writes the counts; rankings are rebuilt on load.
+     */
+    public void writeTo(final DataOutputStream out) throws IOException {
+        final long[] keys = new long[counts.size()];
+        final int[] values = new int[keys.length];
+        final int[] n = new int[1];
+        counts.forEach(new LongIntMap.EntryVisitor() {
+            @Override
+            public void visit(long key, int value) {
+                keys[n[0]] = key;
+                values[n[0]++] = value;
+            }
+        });
+        out.writeInt(n[0]);
+        for (int i = 0; i < n[0]; i++) {
+            out.writeLong(keys[i]);
+            out.writeInt(values[i]);
+        }
+    }
+
+    /**
+     * Adds counts written by writeTo() to an editor. 'idMap' translates the IDs of the writing
+     * session into current ones.
+     */
+    public static void readInto(DataInputStream in, int[] idMap, Editor editor) throws IOException {
+        int n = in.readInt();
+        for (int i = 0; i < n; i++) {
+            long key = in.readLong();
+            int value = in.readInt();
+            int a = remap(idMap, (int) (key >>> 40) & MAX_ID);
+            int b = remap(idMap, (int) (key >>> 20) & MAX_ID);
+            int c = remap(idMap, (int) key & MAX_ID);
+            long kind = key & KIND_MASK;
+            if (kind == UNIGRAM) {
+                editor.addUnigram(c, value);
+            } else if (kind == HISTORY) {
+                // Restored as written: pruning may have dropped some of the bigrams it sums
+                if (valid(c)) editor.increment(key(HISTORY, NONE, NONE, c), value);
+            } else if (kind == BIGRAM) {
+                if (valid(b) && valid(c)) editor.increment(key(BIGRAM, NONE, b, c), value);
+            } else if (kind == TRIGRAM) {
+                editor.addTrigram(a, b, c, value);
+            }
+        }
+    }
+
+    // --- Helpers ---
+
+    private static long key(long kind, int a, int b, int c) {
+        return kind | ((long) a << 40) | ((long) b << 20) | c;
+    }
+
+    private static boolean valid(int id) {
+        return id >= 0 && id <= MAX_ID;
+    }
+
+    private static int remap(int[] idMap, int id) {
+        return id < idMap.length ? idMap[id] : -1;
+    }
+
+    private static boolean contains(int[] ids, int n, int id) {
+        for (int i = 0; i < n; i++) {
+            if (ids[i] == id) return true;
+        }
+        return false;
+    }
+
+    private static void swap(int[] ids, double[] scores, int i, int j) {
+        int id = ids[i];
+        ids[i] = ids[j];
+        ids[j] = id;
+        double score = scores[i];
+        scores[i] = scores[j];
+        scores[j] = score;
+    }
+}
@@ -0,0 +1,217 @@
+package com.app.bubble;
+
+import java.util.Arrays;
+
+/**
+ * Immutable n-gram table for the prediction model snapshots, keyed by packed word IDs (see NgramModel).
+ * Same structure as SnapshotMap, on primitive arrays: a hash trie whose leaves keep up to MAX_LEAF
+ * entries in two flat arrays. A new version copies only the nodes on the path to each changed leaf
+ * and that leaf; everything else is shared with the versions before it.
+ */
+public final class NgramTable {
+
+    // Hash bits per trie level, so an inner node has BRANCHES children
+    private static final int BITS = 4;
+    private static final int BRANCHES = 1 << BITS;
+    // A leaf with more entries splits into an inner node
+    private static final int MAX_LEAF = 64;
+    // The 64 bit hash has bits for this many levels; leaves there no longer split
+    private static final int MAX_DEPTH = 64 / BITS;
+    // Odd, so multiplying by it is a bijection: leaves keep the hash alone and UNMIX recovers the key
+    private static final long MIX = 0x9E3779B97F4A7C15L;
+    private static final long UNMIX = inverse(MIX);
+
+    /**
+     * Entries under one trie prefix, sorted by hash (unsigned).
+     */
+    private static final class Leaf {
+        final long[] hashes;
+        final int[] values;
+
+        Leaf(long[] hashes, int[] values) {
+            this.hashes = hashes;
+            this.values = values;
+        }
+
+        /**
+         * Index of the hash, or -1 if it is absent.
+         */
+        int find(long hash) {
+            int low = 0;
+            int high = hashes.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (hashes[mid] == hash) return mid;
+                if (lessThan(hashes[mid], hash)) low = mid + 1;
+                else high = mid - 1;
+            }
+            return -1;
+        }
+    }
+
+    // A Leaf, an Object[] of BRANCHES children (null where empty), or null for an empty table
+    private final Object root;
+    private final int size;
+
+    public NgramTable() {
+        this(null, 0);
+    }
+
+    private NgramTable(Object root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    public int get(long key, int missing) {
+        long hash = key * MIX;
+        Object node = root;
+        for (int depth = 0; node instanceof Object[]; depth++) {
+            node = ((Object[]) node)[branch(hash, depth)];
+        }
+        if (node == null) return missing;
+        Leaf leaf = (Leaf) node;
+        int i = leaf.find(hash);
+        return i >= 0 ? leaf.values[i] : missing;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns a new version with the given entries added or replaced. This table is left unchanged.
+     */
+    public NgramTable plus(LongIntMap changes) {
+        if (changes.isEmpty()) return this;
+
+        final long[] hashes = new long[changes.size()];
+        changes.forEach(new LongIntMap.EntryVisitor() {
+            private int n;
+
+            @Override
+            public void visit(long key, int value) {
+                // Flipping the sign bit makes the signed sort below an unsigned one
+                hashes[n++] = (key * MIX) ^ Long.MIN_VALUE;
+            }
+        });
+        Arrays.sort(hashes);
+        int[] values = new int[hashes.length];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] ^= Long.MIN_VALUE;
+            values[i] = changes.get(hashes[i] * UNMIX, 0);
+        }
+
+        Insertion insertion = new Insertion(hashes, values);
+        Object changed = insertion.insert(root, 0, 0, hashes.length);
+        return new NgramTable(changed, size + insertion.added);
+    }
+
+    public void forEach(LongIntMap.EntryVisitor visitor) {
+        visit(root, visitor);
+    }
+
+    private static void visit(Object node, LongIntMap.EntryVisitor visitor) {
+        if (node instanceof Object[]) {
+            for (Object child : (Object[]) node) visit(child, visitor);
+        } else if (node != null) {
+            Leaf leaf = (Leaf) node;
+            for (int i = 0; i < leaf.hashes.length; i++) visitor.visit(leaf.hashes[i] * UNMIX, leaf.values[i]);
+        }
+    }
+
+    /**
+     * One plus(): the sorted changes, merged into copies of the nodes they reach.
+     */
+    private static final class Insertion {
+        private final long[] hashes;
+        private final int[] values;
+        int added;
+
+        Insertion(long[] hashes, int[] values) {
+            this.hashes = hashes;
+            this.values = values;
+        }
+
+        /**
+         * Copy of 'node' (at 'depth') with the changes [from, to) in it, which all fall under it.
+         */
+        Object insert(Object node, int depth, int from, int to) {
+            if (node == null) {
+                added += to - from;
+                return build(hashes, values, from, to, depth);
+            }
+            if (node instanceof Leaf) return merge((Leaf) node, depth, from, to);
+
+            Object[] children = ((Object[]) node).clone();
+            while (from < to) {
+                int branch = branch(hashes[from], depth);
+                int end = from + 1;
+                while (end < to && branch(hashes[end], depth) == branch) end++;
+                children[branch] = insert(children[branch], depth + 1, from, end);
+                from = end;
+            }
+            return children;
+        }
+
+        private Object merge(Leaf leaf, int depth, int from, int to) {
+            long[] oldHashes = leaf.hashes;
+            long[] merged = new long[oldHashes.length + to - from];
+            int[] mergedValues = new int[merged.length];
+            int n = 0;
+            int i = 0;
+            int j = from;
+            while (i < oldHashes.length || j < to) {
+                if (j == to || (i < oldHashes.length && lessThan(oldHashes[i], hashes[j]))) {
+                    merged[n] = oldHashes[i];
+                    mergedValues[n++] = leaf.values[i++];
+                } else {
+                    if (i < oldHashes.length && oldHashes[i] == hashes[j]) i++; // Replaced
+                    else added++;
+                    merged[n] = hashes[j];
+                    mergedValues[n++] = values[j++];
+                }
+            }
+            if (n == merged.length && n <= MAX_LEAF) return new Leaf(merged, mergedValues);
+            return build(merged, mergedValues, 0, n, depth);
+        }
+    }
+
+    /**
+     * Node for the sorted entries [from, to) at 'depth': a leaf if they fit in one, else an inner node.
+     */
+    private static Object build(long[] hashes, int[] values, int from, int to, int depth) {
+        if (to - from <= MAX_LEAF || depth >= MAX_DEPTH) {
+            return new Leaf(Arrays.copyOfRange(hashes, from, to), Arrays.copyOfRange(values, from, to));
+        }
+        Object[] children = new Object[BRANCHES];
+        while (from < to) {
+            int branch = branch(hashes[from], depth);
+            int end = from + 1;
+            while (end < to && branch(hashes[end], depth) == branch) end++;
+            children[branch] = build(hashes, values, from, end, depth + 1);
+            from = end;
+        }
+        return children;
+    }
+
+    /**
+     * Child of an inner node at 'depth' that a hash falls under: its bits from the top down.
+     */
+    private static int branch(long hash, int depth) {
+        return (int) (hash >>> (64 - BITS * (depth + 1))) & (BRANCHES - 1);
+    }
+
+    private static boolean lessThan(long a, long b) {
+        return (a ^ Long.MIN_VALUE) < (b ^ Long.MIN_VALUE);
+    }
+
+    /**
+     * Multiplicative inverse of an odd number modulo 2^64 (Newton's method: each step doubles the
+     * number of correct low bits, from 3).
+     */
+    private static long inverse(long odd) {
+        long x = odd;
+        for (int i = 0; i < 5; i++) x *= 2 - odd * x;
+        return x;
+    }
+}
@@ -0,0 +1,266 @@
+package com.app.bubble;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Phrase completion over the stream of words the user committed.
+ * The most recent MAX_HISTORY words are indexed by a suffix automaton over word IDs, so every
+ * phrase typed in that window can be found from its last few words. A state remembers the
+ * RECENT_ENDS most recent positions where its phrase ended; completing the current phrase means finding the
+ * longest context (up to MAX_CONTEXT words) typed before and copying the words that followed it.
+ *
+ * Bounded: when the window is full the automaton is rebuilt from its newer half (amortized O(1)
+ * per word), and a query walks at most MAX_CONTEXT transitions per context length.
+ * Not thread-safe: each PredictionEngine keeps one under its write lock and persists history().
+ */
+public class PhraseIndex {
+
+    public static final int MAX_HISTORY = 2048;
+    public static final int MAX_CONTEXT = 4;
+    public static final int MAX_PHRASE_WORDS = 3;
+    // End positions kept per state; the newest is usually the phrase being typed
+    private static final int RECENT_ENDS = 3;
+
+    // Separates sentences; never part of a context or a completion
+    private static final int BREAK = 0;
+    private static final int ROOT = 0;
+    private static final int NONE = -1;
+
+    // History window
+    private final int[] tokens = new int[MAX_HISTORY];
+    private final String[] words = new String[MAX_HISTORY];
+    private int size;
+    private final Map<String, Integer> ids = new HashMap<>();
+
+    // Automaton: at most 2 states per word
+    private final int[] length = new int[2 * MAX_HISTORY + 1];
+    private final int[] link = new int[2 * MAX_HISTORY + 1];
+    // Newest first, RECENT_ENDS per state
+    private final int[] ends = new int[(2 * MAX_HISTORY + 1) * RECENT_ENDS];
+    private int stateCount;
+    private int last;
+    // Transitions by (state, token), plus each state's tokens for cloning
+    private LongIntMap transitions;
+    private int[] edgeHead;
+    private int[] edgeToken;
+    private int[] edgeNext;
+    private int edgeCount;
+
+    public PhraseIndex() {
+        reset();
+    }
+
+    /**
+     * Appends a committed word. Words with spaces (pasted text) end the phrase instead.
+     */
+    public void append(String word) {
+        if (word == null) return;
+        word = word.trim();
+        if (word.isEmpty()) return;
+        if (word.indexOf(' ') >= 0) {
+            appendBreak();
+            return;
+        }
+        add(word);
+    }
+
+    /**
+     * Ends the current phrase (sentence end, Enter, cursor moved...).
+     * Returns false if there was no phrase to end.
+     */
+    public boolean appendBreak() {
+        if (size == 0 || tokens[size - 1] == BREAK) return false;
+        add(null);
+        return true;
+    }
+
+    /**
+     * The words in the window, oldest first, with null for each break. Appending them to an empty
+     * index (append, appendBreak) restores this one.
+     */
+    public String[] history() {
+        return Arrays.copyOf(words, size);
+    }
+
+    /**
+     * Up to 'limit' distinct continuations of the phrase being typed, each 2..MAX_PHRASE_WORDS
+     * words, best first: longer matched context, then more recent.
+     */
+    public List<String> complete(int limit) {
+        List<String> results = new ArrayList<>();
+        int contextLength = 0;
+        while (contextLength < MAX_CONTEXT && contextLength < size && tokens[size - 1 - contextLength] != BREAK) {
+            contextLength++;
+        }
+
+        for (int k = contextLength; k > 0 && results.size() < limit; k--) {
+            int state = walk(size - k, size);
+            if (state == NONE) continue;
+            for (int i = 0; i < RECENT_ENDS; i++) {
+                addContinuation(results, ends[state * RECENT_ENDS + i], limit);
+            }
+        }
+        return results;
+    }
+
+    // --- Internals ---
+
+    private void addContinuation(List<String> results, int end, int limit) {
+        // The phrase being typed ends at size - 1 itself, nothing follows it yet
+        if (end == NONE || end >= size - 1 || results.size() >= limit) return;
+
+        StringBuilder phrase = new StringBuilder();
+        int count = 0;
+        for (int i = end + 1; i < size && count < MAX_PHRASE_WORDS && tokens[i] != BREAK; i++) {
+            if (count > 0) phrase.append(' ');
+            phrase.append(words[i]);
+            count++;
+        }
+        // Single words are already offered by next-word prediction
+        if (count < 2) return;
+
+        String text = phrase.toString();
+        for (String existing : results) {
+            if (existing.equalsIgnoreCase(text)) return;
+        }
+        results.add(text);
+    }
+
+    /**
+     * State reached by the tokens [from, to), or NONE if that phrase is not in the window.
+     */
+    private int walk(int from, int to) {
+        int state = ROOT;
+        for (int i = from; i < to && state != NONE; i++) {
+            state = transitions.get(edgeKey(state, tokens[i]), NONE);
+        }
+        return state;
+    }
+
+    /**
+     * Appends a word, or a break if it is null.
+     */
+    private void add(String word) {
+        if (size == MAX_HISTORY) rebuild();
+        int token = word == null ? BREAK : tokenOf(word.toLowerCase());
+        tokens[size] = token;
+        words[size] = word;
+        size++;
+        extend(token);
+        if (token == BREAK) return;
+
+        // Record this end position for every context the user could type (see complete())
+        int end = size - 1;
+        for (int k = 1; k <= MAX_CONTEXT && k <= size; k++) {
+            if (tokens[size - k] == BREAK) break;
+            int state = walk(size - k, size);
+            if (state == NONE || ends[state * RECENT_ENDS] == end) continue;
+            int base = state * RECENT_ENDS;
+            System.arraycopy(ends, base, ends, base + 1, RECENT_ENDS - 1);
+            ends[base] = end;
+        }
+    }
+
+    /**
+     * Standard online suffix automaton construction, one token at a time.
+     */
+    private void extend(int token) {
+        int current = newState(length[last] + 1);
+        int p = last;
+        while (p != NONE && !transitions.containsKey(edgeKey(p, token))) {
+            setTransition(p, token, current);
+            p = link[p];
+        }
+
+        if (p == NONE) {
+            link[current] = ROOT;
+        } else {
+            int q = transitions.get(edgeKey(p, token), NONE);
+            if (length[p] + 1 == length[q]) {
+                link[current] = q;
+            } else {
+                int clone = newState(length[p] + 1);
+                for (int e = edgeHead[q]; e != NONE; e = edgeNext[e]) {
+                    setTransition(clone, edgeToken[e], transitions.get(edgeKey(q, edgeToken[e]), NONE));
+                }
+                link[clone] = link[q];
+                System.arraycopy(ends, q * RECENT_ENDS, ends, clone * RECENT_ENDS, RECENT_ENDS);
+                while (p != NONE && transitions.get(edgeKey(p, token), NONE) == q) {
+                    setTransition(p, token, clone);
+                    p = link[p];
+                }
+                link[q] = clone;
+                link[current] = clone;
+            }
+        }
+        last = current;
+    }
+
+    private int newState(int stateLength) {
+        int state = stateCount++;
+        length[state] = stateLength;
+        link[state] = NONE;
+        Arrays.fill(ends, state * RECENT_ENDS, (state + 1) * RECENT_ENDS, NONE);
+        edgeHead[state] = NONE;
+        return state;
+    }
+
+    private void setTransition(int state, int token, int target) {
+        long key = edgeKey(state, token);
+        if (!transitions.containsKey(key)) {
+            int e = edgeCount++;
+            edgeToken[e] = token;
+            edgeNext[e] = edgeHead[state];
+            edgeHead[state] = e;
+        }
+        transitions.put(key, target);
+    }
+
+    private int tokenOf(String key) {
+        Integer id = ids.get(key);
+        if (id == null) {
+            id = ids.size() + 1; // 0 is BREAK
+            ids.put(key, id);
+        }
+        return id;
+    }
+
+    /**
+     * Keeps the newer half of the window and indexes it again; also drops forgotten words' IDs.
+     */
+    private void rebuild() {
+        int keep = MAX_HISTORY / 2;
+        String[] kept = new String[keep];
+        System.arraycopy(words, size - keep, kept, 0, keep);
+        reset();
+        for (String word : kept) {
+            if (word == null) {
+                appendBreak();
+            } else {
+                add(word);
+            }
+        }
+    }
+
+    private void reset() {
+        size = 0;
+        ids.clear();
+        transitions = new LongIntMap(3 * MAX_HISTORY);
+        int maxStates = 2 * MAX_HISTORY + 1;
+        edgeHead = new int[maxStates];
+        // A suffix automaton over n tokens has fewer than 3n transitions
+        edgeToken = new int[3 * MAX_HISTORY + 1];
+        edgeNext = new int[3 * MAX_HISTORY + 1];
+        edgeCount = 0;
+        stateCount = 0;
+        last = newState(0);
+    }
+
+    private static long edgeKey(int state, int token) {
+        return ((long) state << 32) | token;
+    }
+}
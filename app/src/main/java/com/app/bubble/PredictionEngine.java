@@ -2,99 +2,578 @@ package com.app.bubble;
 
 import android.content.Context;
 import android.content.SharedPreferences;
-import android.text.TextUtils;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.List;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.List;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Handles "Type Memory", Dictionary Suggestions, Next-Word Prediction, and Auto-Correction.
- * UPDATED: Added Batch Learning to prevent crashes when copying large texts.
+ * UPDATED: Learned words and bigrams are persisted through an append-only journal (LearningJournal)
+ * instead of rewriting SharedPreferences on every word.
+ * UPDATED: The learned model is an immutable, versioned snapshot published atomically.
+ * Readers (typing path, any thread) never lock; writers serialize and publish one new version per batch.
+ * UPDATED: Words are interned to int IDs; n-gram counts live in primitive tables keyed by packed IDs.
+ * UPDATED: Next-word prediction uses a smoothed trigram model (NgramModel) over the last two words.
+ * UPDATED: Copied text is learned with its word pairs (learnText), counted off the lock and merged as one version.
+ * UPDATED: The learned vocabulary is bounded: counts decay (halved every DECAY_INTERVAL_MS), the least
+ * used words are evicted past the cap, and unknown words must earn their place (CountMinSketch) once it is full.
+ * UPDATED: One engine per language (LanguageUtils code), each with its own journal, base dictionary and
+ * model. Engines are loaded on first use and the inactive ones are released under memory pressure.
+ * UPDATED: Loading is a shared FutureTask per language, so the keyboard can start it early (warmUp)
+ * and concurrent callers wait for the same load instead of each other's locks.
+ * NEW: exportModels/importModels back up and restore every language's model as checksummed snapshots.
+ * NEW: learnStatistics merges counts made off the engine, e.g. by CorpusImporter from a whole text file.
+ * NEW: decodeGesture turns a swipe path into words over both vocabularies (GestureDecoder).
+ * NEW: Each language keeps its own phrase history (PhraseIndex), journaled with the committed words.
  */
 public class PredictionEngine {
 
-    private static PredictionEngine instance;
-    private SharedPreferences prefs;
-    private Set<String> userDictionary;
-    // Map to store PreviousWord -> List of Likely Next Words
-    private Map<String, List<String>> bigramMap; 
+    public static final String DEFAULT_LANGUAGE = "en";
+
+    // Loaded (or loading) languages; the active one serves text whose script does not tell its language (Latin)
+    private static final ConcurrentHashMap<String, FutureTask<PredictionEngine>> instances = new ConcurrentHashMap<>();
+    // Engines dropped by releaseInactive() that may still be writing their directory
+    private static final ConcurrentHashMap<String, PredictionEngine> releasing = new ConcurrentHashMap<>();
+    private static volatile String activeLanguage = DEFAULT_LANGUAGE;
+
+    /**
+     * One immutable version of the learned model. Readers grab the current reference once
+     * and use it for the whole query, so they never see a half-applied batch.
+     */
+    private static final class Model {
+        final long version;
+        // Case-folded prefix index with usage-ranked top words per node
+        final WordTrie words;
+        // Deletion-neighbourhood index for auto-correction
+        final SymSpellIndex corrections;
+        // Unigram / bigram / trigram counts over interned word IDs
+        final NgramModel ngrams;
+        // Resolves the IDs in 'ngrams' (replaced when the vocabulary is trimmed)
+        final WordInterner interner;
+
+        Model(long version, WordTrie words, SymSpellIndex corrections, NgramModel ngrams, WordInterner interner) {
+            this.version = version;
+            this.words = words;
+            this.corrections = corrections;
+            this.ngrams = ngrams;
+            this.interner = interner;
+        }
+    }
+
+    /**
+     * Changes collected by a writer, published together as one new Model version.
+     * Only used while holding writeLock.
+     */
+    private final class Batch {
+        private final List<String> newKeys = new ArrayList<>();
+        private final NgramModel.Editor ngrams;
+
+        Batch() {
+            this(model.ngrams);
+        }
+
+        Batch(NgramModel base) {
+            ngrams = base.edit();
+        }
+
+        void addWord(String word, int uses) {
+            if (!admit(word, uses)) return;
+            restoreWord(word, uses);
+            ngrams.addUnigram(interner.intern(word.toLowerCase()), uses);
+        }
+
+        /**
+         * Known words and any word while there is room are always learned. Once the vocabulary
+         * is full, a new word must be used more often than the words the last trim evicted.
+         */
+        private boolean admit(String word, int uses) {
+            if (model.words.size() + newKeys.size() < maxVocabulary || model.words.contains(word)) {
+                return true;
+            }
+            return admissionSketch.add(word.toLowerCase(), uses) > admissionThreshold;
+        }
+
+        /**
+         * Adds a word to the vocabulary only, for snapshots that carry their own n-gram counts.
+         */
+        void restoreWord(String word, int uses) {
+            if (wordEditor.add(word, uses)) {
+                newKeys.add(word.toLowerCase());
+            }
+        }
+
+        void addBigram(String previous, String next, int uses) {
+            ngrams.addBigram(idFor(previous), idFor(next), uses);
+        }
+
+        void addTrigram(String first, String second, String third, int uses) {
+            ngrams.addTrigram(idFor(first), idFor(second), idFor(third), uses);
+        }
+
+        /**
+         * ID for an n-gram word. Words outside the vocabulary get one only while the interner has
+         * room, so rejected words cannot grow it without bound (NgramModel ignores -1).
+         */
+        private int idFor(String word) {
+            String key = word.toLowerCase();
+            int id = interner.idOf(key);
+            if (id >= 0 || interner.size() >= MAX_INTERNED_FACTOR * maxVocabulary) return id;
+            return interner.intern(key);
+        }
+    }
+
+    private static final int MAX_PREDICTIONS = 5;
+    // Tokens counted between yields when learning a large text
+    private static final int TEXT_CHUNK_SIZE = 256;
+
+    public static final int DEFAULT_MAX_VOCABULARY = 20000;
+    // Learned counts halve once per interval (exponential decay in steps)
+    private static final long DECAY_INTERVAL_MS = 30L * 24 * 60 * 60 * 1000;
+    // Interned words (vocabulary plus n-gram only words) allowed per vocabulary word before a trim
+    private static final int MAX_INTERNED_FACTOR = 2;
+
+    private volatile Model model;
+    private final Object writeLock = new Object();
+    // Writer state, only touched while holding writeLock
+    private WordTrie.Editor wordEditor;
+    // Shared by the versions since the last trim: IDs are only ever added
+    private WordInterner interner = new WordInterner();
+    private int maxVocabulary = DEFAULT_MAX_VOCABULARY;
+    private final CountMinSketch admissionSketch = new CountMinSketch();
+    // Uses a new word needs once the vocabulary is full: the cutoff count of the last trim
+    private int admissionThreshold;
+    private long lastDecayTime = System.currentTimeMillis();
+    // Recently committed words, for phrase completion
+    private PhraseIndex phrases = new PhraseIndex();
+
+    // Append-only persistence of learn events, compacted into a snapshot in the background
+    private LearningJournal journal;
+    private ExecutorService persistenceExecutor = Executors.newSingleThreadExecutor();
+    // Opened once release() has written everything out and closed the journal
+    private final CountDownLatch released = new CountDownLatch(1);
+    // Bundled vocabulary, memory-mapped (may be null if the asset could not be opened)
+    private BinaryDictionary baseDictionary;
     
+    // Journal directory of every language but DEFAULT_LANGUAGE (which keeps "prediction")
+    private static final String JOURNAL_DIR_PREFIX = "prediction-";
+
+    // Export file: int magic, int version, int languages, then per language (UTF code, int length, snapshot)
+    private static final int EXPORT_MAGIC = 0x42455850; // "BEXP"
+    private static final int EXPORT_VERSION = 1;
+
+    // Legacy storage, only read once to migrate into the journal
     private static final String PREFS_NAME = "BubbleDict";
     private static final String KEY_WORDS = "UserWords";
     private static final String KEY_BIGRAMS = "UserBigrams";
 
-    private final String[] BASE_DICT = {
-        "the", "and", "that", "have", "for", "not", "with", "you", "this", "but", "his", "from",
-        "they", "we", "say", "her", "she", "or", "an", "will", "my", "one", "all", "would",
-        "there", "their", "what", "so", "up", "out", "if", "about", "who", "get", "which",
-        "go", "me", "when", "make", "can", "like", "time", "no", "just", "him", "know",
-        "take", "people", "into", "year", "your", "good", "some", "could", "them", "see",
-        "other", "than", "then", "now", "look", "only", "come", "its", "over", "think",
-        "also", "back", "after", "use", "two", "how", "our", "work", "first", "well",
-        "way", "even", "new", "want", "because", "any", "these", "give", "day", "most",
-        "apple", "application", "app", "bubble", "keyboard", "translate", "love", "are"
-    };
-
-    private PredictionEngine(Context context) {
-        prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        userDictionary = new HashSet<>();
-        bigramMap = new HashMap<>();
+    private final String language;
+
+    private PredictionEngine(Context context, String language) {
+        this.language = language;
+        WordTrie empty = new WordTrie();
+        wordEditor = empty.edit();
+        model = new Model(0, empty, new SymSpellIndex(), new NgramModel(), interner);
         
-        // Load saved words
-        Set<String> saved = prefs.getStringSet(KEY_WORDS, new HashSet<String>());
-        if (saved != null) {
-            userDictionary.addAll(saved);
+        // Load learned words and bigrams: snapshot first, then the journal tail, as one version
+        // The default language keeps the directory used before models were split per language
+        journal = DEFAULT_LANGUAGE.equals(language)
+                ? new LearningJournal(context.getFilesDir())
+                : new LearningJournal(context.getFilesDir(), JOURNAL_DIR_PREFIX + language);
+        boolean firstRun = journal.isEmpty() && DEFAULT_LANGUAGE.equals(language);
+        synchronized (writeLock) {
+            final Batch batch = new Batch();
+            journal.load(new LearningJournal.Replayer() {
+                @Override
+                public void onSnapshot(DataInputStream in) throws IOException {
+                    readSnapshot(in, batch);
+                }
+
+                @Override
+                public void onWord(String word) {
+                    batch.addWord(word, 1);
+                }
+
+                @Override
+                public void onBigram(String previous, String next) {
+                    batch.addBigram(previous, next, 1);
+                }
+
+                @Override
+                public void onTrigram(String first, String second, String third) {
+                    batch.addBigram(second, third, 1);
+                    batch.addTrigram(first, second, third, 1);
+                }
+
+                @Override
+                public void onWordUses(String word, int uses) {
+                    batch.addWord(word, uses);
+                }
+
+                @Override
+                public void onBigramUses(String previous, String next, int uses) {
+                    batch.addBigram(previous, next, uses);
+                }
+
+                @Override
+                public void onPhraseWord(String word) {
+                    phrases.append(word);
+                    if (word.trim().length() >= 2) batch.addWord(word.trim(), 1);
+                }
+
+                @Override
+                public void onPhraseBreak() {
+                    phrases.appendBreak();
+                }
+            });
+            publish(batch);
+            if (firstRun) {
+                migrateFromPreferences(context);
+            }
+            // Applies decay that came due while the keyboard was not running
+            compactIfNeeded();
         }
-        Collections.addAll(userDictionary, BASE_DICT);
         
-        // Load Bigrams (Context History)
-        loadBigrams();
+        // Base vocabulary stays on disk, only the mapping is created here
+        baseDictionary = DEFAULT_LANGUAGE.equals(language)
+                ? BinaryDictionary.open(context)
+                : BinaryDictionary.open(context, "base_" + language + ".dict");
     }
 
-    public static synchronized PredictionEngine getInstance(Context context) {
-        if (instance == null) {
-            instance = new PredictionEngine(context);
+    /**
+     * Engine of the active language.
+     */
+    public static PredictionEngine getInstance(Context context) {
+        return getInstance(context, getActiveLanguage());
+    }
+
+    /**
+     * Engine of a language, loaded on first use. Loading reads its journal: call off the main thread.
+     * If another thread is already loading it, waits for that load.
+     * Throws IllegalStateException if the load failed; the next call tries again.
+     */
+    public static PredictionEngine getInstance(Context context, String language) {
+        FutureTask<PredictionEngine> load = loadTask(context, language);
+        load.run(); // No-op if the load already ran or is running
+        return await(language, load);
+    }
+
+    /**
+     * Starts loading the active language's engine on 'executor', unless it is loaded or loading
+     * already. The future completes when the engine is ready; until then getInstance() blocks.
+     */
+    public static Future<PredictionEngine> warmUp(Context context, Executor executor) {
+        FutureTask<PredictionEngine> load = loadTask(context, getActiveLanguage());
+        if (!load.isDone()) executor.execute(load);
+        return load;
+    }
+
+    private static FutureTask<PredictionEngine> loadTask(Context context, final String language) {
+        FutureTask<PredictionEngine> load = instances.get(language);
+        if (load != null) return load;
+
+        final Context appContext = context.getApplicationContext();
+        FutureTask<PredictionEngine> created = new FutureTask<>(new Callable<PredictionEngine>() {
+            @Override
+            public PredictionEngine call() {
+                // A released engine of this language may not have finished writing its directory
+                PredictionEngine previous = releasing.get(language);
+                if (previous != null) previous.awaitReleased();
+                return new PredictionEngine(appContext, language);
+            }
+        });
+        load = instances.putIfAbsent(language, created);
+        return load != null ? load : created;
+    }
+
+    private static PredictionEngine await(String language, Future<PredictionEngine> load) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return load.get();
+                } catch (InterruptedException e) {
+                    // Learning must not be lost to an interrupt: finish waiting, then restore it
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException e) {
+            // Forget the failed load, so the next call tries again
+            instances.remove(language, load);
+            throw new IllegalStateException("Failed to load prediction model: " + language, e.getCause());
+        } finally {
+            if (interrupted) Thread.currentThread().interrupt();
         }
-        return instance;
+    }
+
+    /**
+     * Engine for the language a text (a word being typed, a paste) is written in.
+     */
+    public static PredictionEngine forText(Context context, CharSequence text) {
+        return getInstance(context, LanguageUtils.detectLanguage(text, getActiveLanguage()));
+    }
+
+    public static String getActiveLanguage() {
+        return activeLanguage;
+    }
+
+    /**
+     * Sets the language the user is typing in (its engine is loaded lazily).
+     */
+    public static void setActiveLanguage(String language) {
+        if (language != null && !language.isEmpty()) activeLanguage = language;
+    }
+
+    /**
+     * Drops every engine but the active and default ones (memory pressure). Their learned data
+     * is already on disk and is loaded again when that language is used next.
+     */
+    public static synchronized void releaseInactive() {
+        Iterator<Map.Entry<String, FutureTask<PredictionEngine>>> it = instances.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, FutureTask<PredictionEngine>> entry = it.next();
+            String language = entry.getKey();
+            if (language.equals(activeLanguage) || language.equals(DEFAULT_LANGUAGE)) continue;
+            // A load in progress is about to be used
+            if (!entry.getValue().isDone()) continue;
+            PredictionEngine engine;
+            try {
+                engine = entry.getValue().get();
+            } catch (Exception e) {
+                // The load failed: nothing to release
+                it.remove();
+                continue;
+            }
+            // Registered before it is removed, so a new load of the language waits for it
+            releasing.put(language, engine);
+            it.remove();
+            engine.release();
+            releasing.remove(language, engine);
+        }
+    }
+
+    /**
+     * Lets the background writer finish its pending snapshots, then closes the journal.
+     * A write that still reaches this engine afterwards is not persisted.
+     */
+    private void release() {
+        synchronized (writeLock) {
+            // No new snapshots from here on (see compactJournal)
+            persistenceExecutor.shutdown();
+        }
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (persistenceExecutor.awaitTermination(1, TimeUnit.MINUTES)) break;
+            } catch (InterruptedException e) {
+                // A half-written snapshot would make the next load replay the journals again
+                interrupted = true;
+            }
+        }
+        synchronized (writeLock) {
+            journal.close();
+        }
+        released.countDown();
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    /**
+     * Blocks until release() has finished, so the directory can be loaded again.
+     */
+    private void awaitReleased() {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                released.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
     }
 
     /**
      * Returns a list of suggestions that start with the given prefix.
+     * The user's own words come first (most used first), then the base dictionary fills the rest.
+     * Cost depends only on the prefix length, not on the dictionary size.
      */
     public List<String> getSuggestions(String prefix) {
         List<String> results = new ArrayList<>();
         if (prefix == null || prefix.isEmpty()) return results;
 
-        String check = prefix.toLowerCase();
+        addSuggestions(results, model.words.topWords(prefix, WordTrie.TOP_K), prefix);
+        if (results.size() < 5 && baseDictionary != null) {
+            addSuggestions(results, baseDictionary.topWords(prefix, WordTrie.TOP_K), prefix);
+        }
+        return results;
+    }
 
-        for (String word : userDictionary) {
-            if (word.toLowerCase().startsWith(check)) {
-                if (!word.equalsIgnoreCase(check)) {
-                    results.add(word);
-                }
+    /**
+     * Opens an incremental search for a word being typed: feed it one char per keystroke
+     * instead of calling getSuggestions() with the whole prefix each time.
+     */
+    public SuggestionSession openSession() {
+        return new SuggestionSession(this);
+    }
+
+    /**
+     * Decodes a swipe path (see GestureDecoder) into at most 'limit' words, best first.
+     * Candidates are the user's words and the base dictionary, walked together as one trie.
+     */
+    public List<String> decodeGesture(GestureDecoder decoder, float[] xs, float[] ys, int count, int limit) {
+        final Model m = model;
+        final BinaryDictionary base = baseDictionary;
+        List<String> keys = decoder.decode(xs, ys, count, new GestureDecoder.Lexicon<GesturePrefix>() {
+            @Override
+            public GesturePrefix root() {
+                return new GesturePrefix(0, 0, base == null ? 0 : base.size(), m.words.cursor());
             }
+
+            @Override
+            public GesturePrefix child(GesturePrefix node, char c) {
+                int[] range = node.from < node.to ? base.narrow(node.from, node.to, node.depth, c) : null;
+                WordTrie.Cursor learned = node.learned == null ? null : node.learned.advance(c);
+                if ((range == null || range[0] == range[1]) && learned == null) return null;
+                return range == null
+                        ? new GesturePrefix(node.depth + 1, 0, 0, learned)
+                        : new GesturePrefix(node.depth + 1, range[0], range[1], learned);
+            }
+
+            @Override
+            public double wordFrequency(GesturePrefix node) {
+                int baseFrequency = node.from < node.to ? base.prefixFrequency(node.from, node.to, node.depth) : 0;
+                int uses = node.learned == null ? 0 : node.learned.count();
+                // Base frequencies are log-scaled (255 = most common); one use already beats rare words
+                double fromBase = baseFrequency == 0 ? 0 : Math.pow(2, (baseFrequency - 255) / 16.0);
+                double fromUser = uses == 0 ? 0 : uses / (uses + 2.0);
+                return Math.max(fromBase, fromUser);
+            }
+        }, limit);
+
+        List<String> results = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            results.add(displayForm(m, key));
         }
-        Collections.sort(results);
-        if (results.size() > 5) return results.subList(0, 5);
         return results;
     }
 
+    /**
+     * A prefix in both vocabularies at once: its base dictionary index range and learned trie cursor.
+     */
+    private static final class GesturePrefix {
+        final int depth;
+        final int from;
+        final int to;
+        final WordTrie.Cursor learned;
+
+        GesturePrefix(int depth, int from, int to, WordTrie.Cursor learned) {
+            this.depth = depth;
+            this.from = from;
+            this.to = to;
+            this.learned = learned;
+        }
+    }
+
+    WordTrie getLearnedWords() {
+        return model.words;
+    }
+
+    BinaryDictionary getBaseDictionary() {
+        return baseDictionary;
+    }
+
+    static void addSuggestions(List<String> results, List<String> candidates, String prefix) {
+        for (String word : candidates) {
+            if (results.size() == 5) return;
+            if (word.equalsIgnoreCase(prefix) || containsIgnoreCase(results, word)) continue;
+            results.add(word);
+        }
+    }
+
+    private static boolean containsIgnoreCase(List<String> list, String word) {
+        for (String item : list) {
+            if (item.equalsIgnoreCase(word)) return true;
+        }
+        return false;
+    }
+
     /**
      * Returns suggestions based on the PREVIOUS word (Context).
      */
     public List<String> getNextWordSuggestions(String previousWord) {
-        if (previousWord == null) return new ArrayList<>();
-        String key = previousWord.toLowerCase().trim();
-        
-        if (bigramMap.containsKey(key)) {
-            return new ArrayList<>(bigramMap.get(key));
+        return getNextWordSuggestions(null, previousWord);
+    }
+
+    /**
+     * Predicts the next word from the last two committed words (either may be null) with the
+     * smoothed trigram model. Scores a constant number of candidates, whatever the model size.
+     */
+    public List<String> getNextWordSuggestions(String beforePrevious, String previous) {
+        Model m = model;
+        int[] ids = new int[MAX_PREDICTIONS];
+        int found = m.ngrams.predict(idOf(m, beforePrevious), idOf(m, previous), ids);
+
+        List<String> results = new ArrayList<>(found);
+        for (int i = 0; i < found; i++) {
+            results.add(displayForm(m, m.interner.wordOf(ids[i])));
+        }
+        return results;
+    }
+
+    private static int idOf(Model m, String word) {
+        if (word == null) return -1;
+        String key = word.toLowerCase().trim();
+        return key.isEmpty() ? -1 : m.interner.idOf(key);
+    }
+
+    /**
+     * The n-gram tables only know case-folded words; show them the way the user last typed them.
+     */
+    private static String displayForm(Model m, String key) {
+        String word = m.words.getWord(key);
+        return word != null ? word : key;
+    }
+
+    /**
+     * Version of the learned model, incremented every time a batch of changes is published.
+     */
+    public long getModelVersion() {
+        return model.version;
+    }
+
+    /**
+     * Sets how many learned words are kept. Takes effect with the next learned word.
+     */
+    public void setMaxVocabulary(int max) {
+        synchronized (writeLock) {
+            maxVocabulary = Math.max(1, max);
+        }
+    }
+
+    public int getMaxVocabulary() {
+        synchronized (writeLock) {
+            return maxVocabulary;
         }
-        return new ArrayList<>();
     }
 
     /**
@@ -103,37 +582,118 @@ public class PredictionEngine {
     public void learnWord(String word) {
         if (word == null || word.trim().length() < 2) return;
         String cleanWord = word.trim();
-        
-        if (!userDictionary.contains(cleanWord)) {
-            userDictionary.add(cleanWord);
-            SharedPreferences.Editor editor = prefs.edit();
-            editor.putStringSet(KEY_WORDS, userDictionary);
-            editor.apply();
+        synchronized (writeLock) {
+            Batch batch = new Batch();
+            batch.addWord(cleanWord, 1);
+            publish(batch);
+            journal.appendWord(cleanWord);
+            compactIfNeeded();
+        }
+    }
+
+    /**
+     * Learns a word the user committed (like learnWord) and continues the phrase history with it.
+     * Both go to the journal as one record.
+     */
+    public void learnPhraseWord(String word) {
+        if (word == null || word.trim().isEmpty()) return;
+        String cleanWord = word.trim();
+        synchronized (writeLock) {
+            phrases.append(cleanWord);
+            if (cleanWord.length() >= 2) {
+                Batch batch = new Batch();
+                batch.addWord(cleanWord, 1);
+                publish(batch);
+            }
+            journal.appendPhraseWord(cleanWord);
+            compactIfNeeded();
+        }
+    }
+
+    /**
+     * Ends the phrase being typed (punctuation, Enter): no completion continues across it.
+     */
+    public void endPhrase() {
+        synchronized (writeLock) {
+            if (phrases.appendBreak()) journal.appendPhraseBreak();
+        }
+    }
+
+    /**
+     * Up to 'limit' multi-word continuations of the phrase being typed (see PhraseIndex).
+     */
+    public List<String> completePhrase(int limit) {
+        synchronized (writeLock) {
+            return phrases.complete(limit);
         }
     }
 
     /**
      * NEW: Batch Learn words (Prevents crash when copying Wikipedia/Large Text).
-     * Adds all words to memory first, then saves to disk ONCE.
+     * Publishes all words as ONE new model version, then journals them as ONE record.
      */
     public void learnWordsBatch(List<String> words) {
         if (words == null || words.isEmpty()) return;
         
-        boolean modified = false;
-        for (String w : words) {
-            if (w != null && w.length() > 1) {
-                if (!userDictionary.contains(w)) {
-                    userDictionary.add(w);
-                    modified = true;
+        synchronized (writeLock) {
+            Batch batch = new Batch();
+            List<String> learned = new ArrayList<>(words.size());
+            for (String w : words) {
+                if (w != null && w.length() > 1) {
+                    batch.addWord(w, 1);
+                    learned.add(w);
                 }
             }
+
+            if (!learned.isEmpty()) {
+                publish(batch);
+                journal.appendWords(learned);
+                compactIfNeeded();
+            }
         }
+    }
 
-        if (modified) {
-            // Single Disk Write for thousands of words
-            SharedPreferences.Editor editor = prefs.edit();
-            editor.putStringSet(KEY_WORDS, userDictionary);
-            editor.apply();
+    /**
+     * Learns words and word pairs from a large text (a paste, an article) as ONE model version
+     * and ONE journal record. Tokenizing and counting run chunk by chunk on the calling thread,
+     * yielding in between and without the write lock; only the final merge takes it.
+     * Call from a background thread.
+     */
+    public void learnText(CharSequence text) {
+        TextStatistics stats = new TextStatistics();
+        WordTokenizer tokenizer = new WordTokenizer(text, true);
+        List<String> chunk = new ArrayList<>(TEXT_CHUNK_SIZE);
+        while (tokenizer.next(chunk, TEXT_CHUNK_SIZE) > 0) {
+            stats.add(chunk);
+            chunk.clear();
+            Thread.yield();
+        }
+        learnStatistics(stats);
+    }
+
+    /**
+     * Merges counts gathered elsewhere (learnText, CorpusImporter) as ONE model version and ONE
+     * journal record.
+     */
+    public void learnStatistics(TextStatistics stats) {
+        if (stats.isEmpty()) return;
+
+        synchronized (writeLock) {
+            final Batch batch = new Batch();
+            stats.forEach(new TextStatistics.Visitor() {
+                @Override
+                public void visitWord(String word, int uses) {
+                    batch.addWord(word, uses);
+                }
+
+                @Override
+                public void visitBigram(String previous, String next, int uses) {
+                    batch.addBigram(previous, next, uses);
+                }
+            });
+            publish(batch);
+            journal.appendCounts(stats);
+            compactIfNeeded();
         }
     }
 
@@ -146,77 +706,430 @@ public class PredictionEngine {
         String key = prev.toLowerCase().trim();
         String value = current.trim();
         
-        List<String> list = bigramMap.get(key);
-        if (list == null) {
-            list = new ArrayList<>();
-            bigramMap.put(key, list);
+        synchronized (writeLock) {
+            Batch batch = new Batch();
+            batch.addBigram(key, value, 1);
+            publish(batch);
+            journal.appendBigram(key, value);
+            compactIfNeeded();
         }
-        
-        if (list.contains(value)) {
-            list.remove(value);
+    }
+
+    /**
+     * Learns a word following the two before it (bigram and trigram), as one model version.
+     */
+    public void learnNextWord(String beforePrev, String prev, String current) {
+        if (beforePrev == null || beforePrev.trim().isEmpty()) {
+            learnNextWord(prev, current);
+            return;
+        }
+        if (prev == null || current == null || prev.isEmpty() || current.isEmpty()) return;
+
+        String first = beforePrev.toLowerCase().trim();
+        String second = prev.toLowerCase().trim();
+        String third = current.trim();
+
+        synchronized (writeLock) {
+            Batch batch = new Batch();
+            batch.addBigram(second, third, 1);
+            batch.addTrigram(first, second, third, 1);
+            publish(batch);
+            journal.appendTrigram(first, second, third);
+            compactIfNeeded();
         }
-        list.add(0, value);
-        
-        if (list.size() > 5) list.remove(list.size() - 1);
-        
-        saveBigrams();
     }
 
     /**
      * Auto-Correction Logic.
+     * Looks up candidates within edit distance 2 in the deletion index and prefers the most used one.
      */
     public String getBestMatch(String typo) {
         if (typo == null || typo.length() < 3) return null;
+        Model m = model;
         
         // If word is already valid, do not correct
-        if (userDictionary.contains(typo.toLowerCase())) {
+        if (m.words.contains(typo) || (baseDictionary != null && baseDictionary.contains(typo))) {
             return null; 
         }
 
-        String bestWord = null;
-        int minDistance = Integer.MAX_VALUE;
         String target = typo.toLowerCase();
+        String bestWord = null;
 
-        for (String dictWord : userDictionary) {
-            int distance = calculateLevenshteinDistance(target, dictWord.toLowerCase());
-            
-            if (distance < minDistance && distance <= 2 && Math.abs(dictWord.length() - target.length()) <= 2) {
-                minDistance = distance;
-                bestWord = dictWord;
+        // 1. User's own words win ties, so only look for strictly closer base words afterwards
+        List<String> learned = new ArrayList<>();
+        int learnedDistance = m.corrections.closest(target, SymSpellIndex.MAX_EDIT_DISTANCE, learned);
+        int bestScore = -1;
+        for (String key : learned) {
+            int count = m.words.getCount(key);
+            if (count > bestScore) {
+                bestScore = count;
+                bestWord = m.words.getWord(key);
+            }
+        }
+
+        // 2. Base dictionary, ranked by frequency
+        if (baseDictionary != null) {
+            List<String> base = new ArrayList<>();
+            int bound = learned.isEmpty() ? SymSpellIndex.MAX_EDIT_DISTANCE : learnedDistance - 1;
+            if (baseDictionary.closest(target, bound, base) <= bound) {
+                bestScore = -1;
+                for (String word : base) {
+                    int freq = baseDictionary.getFrequency(word);
+                    if (freq > bestScore) {
+                        bestScore = freq;
+                        bestWord = word;
+                    }
+                }
             }
         }
-        
-        if (minDistance == 0) return null; 
         return bestWord;
     }
 
-    private int calculateLevenshteinDistance(String s1, String s2) {
-        int[][] dp = new int[s1.length() + 1][s2.length() + 1];
-        for (int i = 0; i <= s1.length(); i++) dp[i][0] = i;
-        for (int j = 0; j <= s2.length(); j++) dp[0][j] = j;
+    /**
+     * Turns a batch into the next model version. Caller holds writeLock.
+     */
+    private void publish(Batch batch) {
+        Model current = model;
+        model = new Model(current.version + 1,
+                wordEditor.publish(),
+                current.corrections.withKeys(batch.newKeys),
+                batch.ngrams.publish(),
+                interner);
+    }
+
+    // --- Vocabulary budget ---
+
+    /**
+     * Trims the model if decay is due or it outgrew its budget. Caller holds writeLock and has
+     * journaled everything published so far. Returns true if a new model was built.
+     */
+    private boolean trimIfNeeded() {
+        long now = System.currentTimeMillis();
+        // A clock set backwards must not postpone decay forever
+        if (now < lastDecayTime) lastDecayTime = now;
+        int halvings = (int) Math.min(31, (now - lastDecayTime) / DECAY_INTERVAL_MS);
+        boolean overBudget = model.words.size() > maxVocabulary + maxVocabulary / 10
+                || interner.size() > MAX_INTERNED_FACTOR * maxVocabulary;
+        if (halvings == 0 && !overBudget) return false;
+
+        rebuild(halvings);
+        lastDecayTime += halvings * DECAY_INTERVAL_MS;
+        return true;
+    }
+
+    /**
+     * Replaces the model with a decayed copy of at most maxVocabulary words, with fresh IDs.
+     * Words never decay below 1 use, so only the cap evicts them (least used first);
+     * n-grams decaying to 0 are dropped. Linear in the model size, and rare.
+     */
+    private void rebuild(int halvings) {
+        Model current = model;
+        final List<String> words = new ArrayList<>(current.words.size());
+        final List<Integer> counts = new ArrayList<>(current.words.size());
+        current.words.forEach(new WordTrie.WordVisitor() {
+            @Override
+            public void visit(String word, int count) {
+                words.add(word);
+                counts.add(count);
+            }
+        });
+
+        int[] decayed = new int[words.size()];
+        for (int i = 0; i < decayed.length; i++) {
+            decayed[i] = Math.max(1, counts.get(i) >> halvings);
+        }
+
+        // Least used words go first; at the cutoff count the first ones visited stay
+        int cutoff = 0;
+        int keepAtCutoff = 0;
+        if (decayed.length > maxVocabulary) {
+            int[] sorted = decayed.clone();
+            Arrays.sort(sorted);
+            cutoff = sorted[decayed.length - maxVocabulary];
+            keepAtCutoff = maxVocabulary;
+            for (int count : decayed) {
+                if (count > cutoff) keepAtCutoff--;
+            }
+        }
+
+        WordInterner fresh = new WordInterner();
+        WordTrie.Editor editor = new WordTrie().edit();
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < decayed.length; i++) {
+            if (decayed[i] < cutoff || (decayed[i] == cutoff && keepAtCutoff-- <= 0)) continue;
+            String word = words.get(i);
+            editor.add(word, decayed[i]);
+            String key = word.toLowerCase();
+            fresh.intern(key);
+            keys.add(key);
+        }
+        admissionThreshold = decayed.length > maxVocabulary ? cutoff : admissionThreshold >> halvings;
+
+        int[] idMap = new int[interner.size()];
+        for (int id = 0; id < idMap.length; id++) {
+            idMap[id] = fresh.idOf(interner.wordOf(id));
+        }
+
+        interner = fresh;
+        wordEditor = editor;
+        model = new Model(current.version + 1,
+                editor.publish(),
+                new SymSpellIndex().withKeys(keys),
+                current.ngrams.rebuilt(idMap, halvings),
+                fresh);
+    }
+
+    // --- Persistence ---
+
+    /**
+     * Folds the journal into a fresh snapshot once it has grown large enough, or the model was trimmed.
+     * The current model version is captured here, in order with the appends (caller holds writeLock);
+     * being immutable, it is written out in the background without copying.
+     */
+    private void compactIfNeeded() {
+        // A trimmed model replaces what the journal would replay, so it is snapshotted at once
+        if (!trimIfNeeded() && !journal.needsCompaction()) return;
+        compactJournal();
+    }
+
+    private void compactJournal() {
+        // Released engine hit by a late write: it can no longer snapshot (see release)
+        if (persistenceExecutor.isShutdown()) return;
+        final Model snapshot = model;
+        final int vocabularySize = snapshot.interner.size();
+        final long decayTime = lastDecayTime;
+        final int threshold = admissionThreshold;
+        final String[] history = phrases.history();
+        final long covered = journal.rotate();
 
-        for (int i = 1; i <= s1.length(); i++) {
-            for (int j = 1; j <= s2.length(); j++) {
-                int cost = (s1.charAt(i - 1) == s2.charAt(j - 1)) ? 0 : 1;
-                dp[i][j] = Math.min(Math.min(dp[i - 1][j] + 1, dp[i][j - 1] + 1), dp[i - 1][j - 1] + cost);
+        persistenceExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                journal.writeSnapshot(covered, new LearningJournal.SnapshotWriter() {
+                    @Override
+                    public void writeTo(final DataOutputStream out) throws IOException {
+                        writeSnapshot(snapshot, vocabularySize, decayTime, threshold, history, out);
+                    }
+                });
             }
+        });
+    }
+
+    private void writeSnapshot(Model snapshot, int vocabularySize, long decayTime, int threshold,
+                               String[] history, DataOutputStream out) throws IOException {
+        out.writeLong(decayTime);
+        out.writeInt(threshold);
+        // Vocabulary in ID order first, so a reload interns the same IDs
+        out.writeInt(vocabularySize);
+        for (int id = 0; id < vocabularySize; id++) {
+            out.writeUTF(snapshot.interner.wordOf(id));
+        }
+
+        final List<String> words = new ArrayList<>(snapshot.words.size());
+        final List<Integer> counts = new ArrayList<>(snapshot.words.size());
+        snapshot.words.forEach(new WordTrie.WordVisitor() {
+            @Override
+            public void visit(String word, int count) {
+                words.add(word);
+                counts.add(count);
+            }
+        });
+        out.writeInt(words.size());
+        for (int i = 0; i < words.size(); i++) {
+            out.writeUTF(words.get(i));
+            out.writeInt(counts.get(i));
+        }
+
+        snapshot.ngrams.writeTo(out);
+
+        // Phrase history, oldest first; breaks are written as empty strings
+        out.writeInt(history.length);
+        for (String word : history) {
+            out.writeUTF(word == null ? "" : word);
         }
-        return dp[s1.length()][s2.length()];
     }
 
-    // --- Persistence for Bigrams ---
-    
-    private void saveBigrams() {
-        StringBuilder sb = new StringBuilder();
-        for (Map.Entry<String, List<String>> entry : bigramMap.entrySet()) {
-            sb.append(entry.getKey()).append(":");
-            sb.append(TextUtils.join(",", entry.getValue()));
-            sb.append("|");
+    private void readSnapshot(DataInputStream in, Batch batch) throws IOException {
+        lastDecayTime = in.readLong();
+        admissionThreshold = in.readInt();
+        int[] idMap = new int[in.readInt()];
+        for (int id = 0; id < idMap.length; id++) {
+            idMap[id] = interner.intern(in.readUTF());
+        }
+        int wordCount = in.readInt();
+        for (int i = 0; i < wordCount; i++) {
+            String word = in.readUTF();
+            batch.restoreWord(word, in.readInt());
+        }
+        NgramModel.readInto(in, idMap, batch.ngrams);
+        int historyLength = in.readInt();
+        for (int i = 0; i < historyLength; i++) {
+            String word = in.readUTF();
+            if (word.isEmpty()) phrases.appendBreak();
+            else phrases.append(word);
         }
-        prefs.edit().putString(KEY_BIGRAMS, sb.toString()).apply();
     }
 
-    private void loadBigrams() {
+    // --- Export / import ---
+
+    /**
+     * Writes the learned model of every language used so far to 'out'. Each language is a
+     * complete, checksummed snapshot (see LearningJournal). Loads the models: call off the main thread.
+     * Returns the number of languages written.
+     */
+    public static int exportModels(Context context, OutputStream out) throws IOException {
+        Set<String> languages = storedLanguages(context);
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(EXPORT_MAGIC);
+        data.writeInt(EXPORT_VERSION);
+        data.writeInt(languages.size());
+        for (String language : languages) {
+            byte[] snapshot = getInstance(context, language).exportSnapshot();
+            data.writeUTF(language);
+            data.writeInt(snapshot.length);
+            data.write(snapshot);
+        }
+        data.flush();
+        return languages.size();
+    }
+
+    /**
+     * Replaces the learned model of each language found in an export. Every snapshot is verified
+     * before any model changes, so a damaged file changes nothing. Call off the main thread.
+     * Returns the number of languages restored.
+     */
+    public static int importModels(Context context, InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != EXPORT_MAGIC) throw new IOException("Not a typing data export");
+        int version = data.readInt();
+        if (version != EXPORT_VERSION) throw new IOException("Unsupported export version " + version);
+
+        int count = data.readInt();
+        List<String> languages = new ArrayList<>();
+        List<byte[]> snapshots = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String language = data.readUTF();
+            int length = data.readInt();
+            if (length < 0 || length > 256 * 1024 * 1024) throw new IOException("Corrupt export");
+            byte[] snapshot = new byte[length];
+            data.readFully(snapshot);
+            LearningJournal.checkSnapshot(snapshot);
+            languages.add(language);
+            snapshots.add(snapshot);
+        }
+
+        for (int i = 0; i < languages.size(); i++) {
+            getInstance(context, languages.get(i)).importSnapshot(snapshots.get(i));
+        }
+        return languages.size();
+    }
+
+    /**
+     * Languages with a model on disk or in memory.
+     */
+    private static Set<String> storedLanguages(Context context) {
+        Set<String> languages = new TreeSet<>(instances.keySet());
+        languages.add(DEFAULT_LANGUAGE);
+        String[] names = context.getFilesDir().list();
+        if (names == null) return languages;
+        for (String name : names) {
+            if (name.startsWith(JOURNAL_DIR_PREFIX)) {
+                languages.add(name.substring(JOURNAL_DIR_PREFIX.length()));
+            }
+        }
+        return languages;
+    }
+
+    /**
+     * The current model version as one snapshot (same format as the on-disk one).
+     */
+    private byte[] exportSnapshot() throws IOException {
+        final Model snapshot;
+        final long decayTime;
+        final int threshold;
+        final String[] history;
+        final int vocabularySize;
+        synchronized (writeLock) {
+            snapshot = model;
+            decayTime = lastDecayTime;
+            threshold = admissionThreshold;
+            history = phrases.history();
+            // The interner keeps growing: only the IDs interned so far are visible and match this version
+            vocabularySize = snapshot.interner.size();
+        }
+        // Serialized without holding the lock: the version is immutable, and interned IDs never change
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * 1024);
+        LearningJournal.writeSnapshot(bytes, -1, new LearningJournal.SnapshotWriter() {
+            @Override
+            public void writeTo(DataOutputStream out) throws IOException {
+                writeSnapshot(snapshot, vocabularySize, decayTime, threshold, history, out);
+            }
+        });
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Replaces the learned model with a snapshot, published as one new version and persisted at once.
+     * If the snapshot cannot be read the model is left as it was.
+     */
+    private void importSnapshot(byte[] data) throws IOException {
+        synchronized (writeLock) {
+            WordInterner previousInterner = interner;
+            WordTrie.Editor previousEditor = wordEditor;
+            long previousDecayTime = lastDecayTime;
+            int previousThreshold = admissionThreshold;
+            PhraseIndex previousPhrases = phrases;
+
+            // Built beside the current model, which readers keep using until the publish below
+            interner = new WordInterner();
+            wordEditor = new WordTrie().edit();
+            lastDecayTime = System.currentTimeMillis();
+            admissionThreshold = 0;
+            phrases = new PhraseIndex();
+            final Batch batch = new Batch(new NgramModel());
+            try {
+                LearningJournal.readSnapshot(data, new LearningJournal.SnapshotReader() {
+                    @Override
+                    public void readFrom(DataInputStream in) throws IOException {
+                        readSnapshot(in, batch);
+                    }
+                });
+            } catch (IOException e) {
+                interner = previousInterner;
+                wordEditor = previousEditor;
+                lastDecayTime = previousDecayTime;
+                admissionThreshold = previousThreshold;
+                phrases = previousPhrases;
+                throw e;
+            }
+
+            model = new Model(model.version + 1,
+                    wordEditor.publish(),
+                    new SymSpellIndex().withKeys(batch.newKeys),
+                    batch.ngrams.publish(),
+                    interner);
+            // Supersedes every journal written so far
+            trimIfNeeded();
+            compactJournal();
+        }
+    }
+
+    /**
+     * One-time import of the old SharedPreferences storage (StringSet + "key:a,b|" string).
+     * Caller holds writeLock.
+     */
+    private void migrateFromPreferences(Context context) {
+        final SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        if (!prefs.contains(KEY_WORDS) && !prefs.contains(KEY_BIGRAMS)) return;
+
+        Batch batch = new Batch();
+        Set<String> saved = prefs.getStringSet(KEY_WORDS, null);
+        if (saved != null) {
+            for (String word : saved) {
+                batch.addWord(word, 1);
+            }
+        }
+
         String raw = prefs.getString(KEY_BIGRAMS, "");
         if (!raw.isEmpty()) {
             String[] entries = raw.split("\\|");
@@ -225,9 +1138,18 @@ public class PredictionEngine {
                 if (parts.length == 2) {
                     String key = parts[0];
                     String[] values = parts[1].split(",");
-                    bigramMap.put(key, new ArrayList<>(Arrays.asList(values)));
+                    for (int j = values.length - 1; j >= 0; j--) batch.addBigram(key, values[j], 1);
                 }
             }
         }
+
+        publish(batch);
+        compactJournal();
+        persistenceExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                prefs.edit().remove(KEY_WORDS).remove(KEY_BIGRAMS).apply();
+            }
+        });
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,343 @@
+package com.app.bubble;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the keyboard's PredictionEngine work (suggestions, auto-correct, learning) on one
+ * background thread, so a slow dictionary operation never delays key echo.
+ * Suggestion queries are numbered: a query that was superseded by a newer keystroke is skipped,
+ * and a result is only delivered if no newer query was issued meanwhile.
+ * Learning tasks are never dropped and run in submission order.
+ * Prefix suggestions go through a SuggestionSession that follows the word being typed, so each
+ * keystroke only narrows (or, on Backspace, pops) the previous search.
+ * Committed words also feed the phrase history of their language (PredictionEngine.learnPhraseWord),
+ * whose multi-word completions lead the next-word predictions.
+ * A word whose auto-correction is only found after Space is learned once the main thread reports
+ * which of the two it left on screen (settleCorrection).
+ * Every word goes to the engine of its language (PredictionEngine.forText), so a second
+ * language is only loaded once the user actually types in it.
+ * warmUp() loads the model as the first task, before any keystroke needs it.
+ * A model that fails to load never throws out of a task (that would kill the keyboard): queries
+ * get an empty strip and nothing is learned in that language.
+ * Swipe paths are decoded here too (decodeGesture), off the main thread like any other query.
+ */
+public class PredictionWorker {
+
+    public interface PredictionListener {
+        /**
+         * @param word        the word the query was made for
+         * @param suggestions candidate strip entries
+         * @param correction  auto-correction for 'word' computed ahead of the space press, or null
+         */
+        void onPredictions(String word, List<String> suggestions, String correction);
+    }
+
+    public interface CommitListener {
+        void onWordCommitted(String typed, String correction);
+    }
+
+    public interface GestureListener {
+        /**
+         * @param words decoded words, best first; empty if the path matched nothing
+         */
+        void onGestureDecoded(List<String> words);
+    }
+
+    // Phrase completions shown ahead of the next-word predictions
+    private static final int MAX_PHRASES = 2;
+
+    private final Context context;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final AtomicInteger latestQuery = new AtomicInteger();
+    // Only touched on the executor thread
+    private SuggestionSession session;
+    private PredictionEngine sessionEngine;
+    // Word waiting for settleCorrection, learned as typed if another learning task comes first
+    private PendingCommit pending;
+
+    /**
+     * A committed word with a late correction, and the words before it.
+     */
+    private static final class PendingCommit {
+        final String typed;
+        final String correction;
+        final String beforePreviousWord;
+        final String previousWord;
+
+        PendingCommit(String typed, String correction, String beforePreviousWord, String previousWord) {
+            this.typed = typed;
+            this.correction = correction;
+            this.beforePreviousWord = beforePreviousWord;
+            this.previousWord = previousWord;
+        }
+    }
+
+    public PredictionWorker(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    /**
+     * Loads the active language's model on the worker thread ahead of the first keystroke.
+     * 'onReady' runs on the main thread once it is loaded (or failed to load).
+     */
+    public Future<PredictionEngine> warmUp(final Runnable onReady) {
+        Future<PredictionEngine> ready = PredictionEngine.warmUp(context, executor);
+        // Queued behind the load on the same thread
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                handler.post(onReady);
+            }
+        });
+        return ready;
+    }
+
+    /**
+     * Computes suggestions for the word being typed (or next-word predictions from the last two
+     * committed words when it is empty), plus a speculative auto-correction, and delivers them
+     * on the main thread.
+     */
+    public void requestPredictions(final String word, final String beforePreviousWord, final String previousWord,
+                                   final PredictionListener listener) {
+        final int query = latestQuery.incrementAndGet();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (query != latestQuery.get()) return; // A newer keystroke already arrived
+
+                PredictionEngine engine = engineFor(word.isEmpty() ? previousWord : word);
+                if (engine == null) {
+                    deliver(query, word, new ArrayList<String>(), null, listener);
+                    return;
+                }
+                if (session == null || sessionEngine != engine) {
+                    session = engine.openSession();
+                    sessionEngine = engine;
+                }
+                // Also catches up on keystrokes whose queries were skipped
+                session.moveTo(word);
+
+                final List<String> suggestions;
+                if (word.isEmpty()) {
+                    suggestions = engine.completePhrase(MAX_PHRASES);
+                    suggestions.addAll(engine.getNextWordSuggestions(beforePreviousWord, previousWord));
+                } else {
+                    suggestions = session.getSuggestions();
+                }
+
+                if (query != latestQuery.get()) return;
+                String correction = word.length() > 1 ? engine.getBestMatch(word) : null;
+                deliver(query, word, suggestions, correction, listener);
+            }
+        });
+    }
+
+    /**
+     * Hands a query's result to the main thread, unless a newer query was issued by then.
+     */
+    private void deliver(final int query, final String word, final List<String> suggestions, final String correction,
+                         final PredictionListener listener) {
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (query == latestQuery.get()) {
+                    listener.onPredictions(word, suggestions, correction);
+                }
+            }
+        });
+    }
+
+    /**
+     * Decodes a swipe path into words with the active language's vocabulary and delivers them on
+     * the main thread. Counts as a query: pending suggestions for older keystrokes are dropped.
+     */
+    public void decodeGesture(final GestureDecoder decoder, final float[] xs, final float[] ys, final int count,
+                              final int limit, final GestureListener listener) {
+        final int query = latestQuery.incrementAndGet();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                PredictionEngine engine = engineFor(null);
+                final List<String> words = engine != null
+                        ? engine.decodeGesture(decoder, xs, ys, count, limit) : new ArrayList<String>();
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (query == latestQuery.get()) {
+                            listener.onGestureDecoded(words);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Finishes a word typed with Space: optionally looks up its correction, then learns the word and
+     * its links to the words before it. The listener gets the correction (or null) afterwards; a word
+     * with a correction is only learned once settleCorrection says which of the two was kept.
+     */
+    public void commitWord(final String typed, final String beforePreviousWord, final String previousWord,
+                           final boolean findCorrection, final CommitListener listener) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                settlePending();
+                PredictionEngine engine = engineFor(typed);
+                String correction = findCorrection && engine != null ? engine.getBestMatch(typed) : null;
+                if (correction != null && correction.equals(typed)) correction = null;
+
+                if (correction != null) {
+                    pending = new PendingCommit(typed, correction, beforePreviousWord, previousWord);
+                } else if (engine != null) {
+                    learnCommitted(typed, beforePreviousWord, previousWord);
+                }
+
+                final String result = correction;
+                if (listener != null) {
+                    handler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            listener.onWordCommitted(typed, result);
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    /**
+     * Learns a word whose late correction (see commitWord) the main thread applied or dropped:
+     * the correction if it replaced the typed word on screen, the typed word otherwise.
+     * 'beforePreviousWord' and 'previousWord' are the words passed to commitWord.
+     */
+    public void settleCorrection(final String typed, final String correction, final String beforePreviousWord,
+                                 final String previousWord, final boolean applied) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (pending != null && pending.typed.equals(typed) && pending.correction.equals(correction)) {
+                    pending = null;
+                    learnCommitted(applied ? correction : typed, beforePreviousWord, previousWord);
+                } else if (applied) {
+                    // A later task already learned the typed word, but the correction is what the user sees
+                    learnCommitted(correction, beforePreviousWord, previousWord);
+                }
+            }
+        });
+    }
+
+    /**
+     * Learns a word (and its links to the previous words, if any) in the background.
+     */
+    public void learn(final String word, final String beforePreviousWord, final String previousWord) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                settlePending();
+                PredictionEngine engine = engineFor(word);
+                if (engine == null) return;
+                engine.learnPhraseWord(word);
+                if (sameLanguage(engine, previousWord) && word != null && !word.isEmpty()) {
+                    engine.learnNextWord(sameLanguage(engine, beforePreviousWord) ? beforePreviousWord : null,
+                            previousWord, word.trim());
+                }
+            }
+        });
+    }
+
+    /**
+     * Marks the end of a phrase (punctuation, Enter): no completion continues across it.
+     */
+    public void endPhrase() {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                settlePending();
+                PredictionEngine engine = engineFor(null);
+                if (engine != null) engine.endPhrase();
+            }
+        });
+    }
+
+    /**
+     * Releases the models of languages not in use (memory pressure), between prediction tasks.
+     */
+    public void trimMemory() {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                PredictionEngine.releaseInactive();
+                session = null;
+                sessionEngine = null;
+            }
+        });
+    }
+
+    /**
+     * Learns a word finished like with Space, and its links to the words before it.
+     */
+    private void learnCommitted(String word, String beforePreviousWord, String previousWord) {
+        PredictionEngine engine = engineFor(word);
+        if (engine == null) return;
+        if (previousWord == null || previousWord.isEmpty()) engine.endPhrase();
+        engine.learnPhraseWord(word);
+        if (sameLanguage(engine, previousWord)) {
+            engine.learnNextWord(sameLanguage(engine, beforePreviousWord) ? beforePreviousWord : null,
+                    previousWord, word);
+        }
+    }
+
+    /**
+     * Learns the pending word as typed: a later learning task means the user moved on without the
+     * correction being applied.
+     */
+    private void settlePending() {
+        if (pending == null) return;
+        PendingCommit commit = pending;
+        pending = null;
+        learnCommitted(commit.typed, commit.beforePreviousWord, commit.previousWord);
+    }
+
+    /**
+     * True if 'word' is written in the language of 'engine' (word pairs never cross languages).
+     */
+    private boolean sameLanguage(PredictionEngine engine, String word) {
+        if (word == null || word.isEmpty()) return false;
+        return engineFor(word) == engine;
+    }
+
+    /**
+     * Engine for the language of 'text' (the active language for null), or null if its model
+     * failed to load. A later call tries loading it again.
+     */
+    private PredictionEngine engineFor(CharSequence text) {
+        try {
+            return PredictionEngine.forText(context, text);
+        } catch (IllegalStateException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    public void shutdown() {
+        latestQuery.incrementAndGet();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                settlePending();
+            }
+        });
+        executor.shutdown();
+    }
+}
@@ -2,13 +2,29 @@ package com.app.bubble;
 
 import android.app.Activity;
 import android.content.Context;
+import android.content.Intent;
 import android.content.SharedPreferences;
+import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.ParcelFileDescriptor;
 import android.view.View;
 import android.widget.AdapterView;
 import android.widget.ArrayAdapter;
+import android.widget.Button;
 import android.widget.EditText;
 import android.widget.Spinner;
+import android.widget.Toast;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 // NEW: AdMob Imports
 import com.google.android.gms.ads.AdRequest;
@@ -25,6 +41,13 @@ public class SettingsActivity extends Activity {
     private EditText apiKeyEditText; // New variable for the EditText field
     private SharedPreferences sharedPreferences;
 
+    // Typing data backup (Storage Access Framework)
+    private static final int REQUEST_EXPORT_TYPING_DATA = 101;
+    private static final int REQUEST_IMPORT_TYPING_DATA = 102;
+    private static final int REQUEST_LEARN_TEXT_FILE = 103;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -59,12 +82,66 @@ public class SettingsActivity extends Activity {
 				}
 			});
 
+        // NEW: Export / import of the keyboard's learned typing data
+        Button exportButton = findViewById(R.id.export_typing_data_button);
+        Button importButton = findViewById(R.id.import_typing_data_button);
+        Button learnFileButton = findViewById(R.id.learn_text_file_button);
+        exportButton.setOnClickListener(new View.OnClickListener() {
+				@Override
+				public void onClick(View v) {
+					Intent intent = new Intent(Intent.ACTION_CREATE_DOCUMENT);
+					intent.addCategory(Intent.CATEGORY_OPENABLE);
+					intent.setType("application/octet-stream");
+					intent.putExtra(Intent.EXTRA_TITLE, "bubble-typing-data.bin");
+					startActivityForResult(intent, REQUEST_EXPORT_TYPING_DATA);
+				}
+			});
+        importButton.setOnClickListener(new View.OnClickListener() {
+				@Override
+				public void onClick(View v) {
+					Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+					intent.addCategory(Intent.CATEGORY_OPENABLE);
+					intent.setType("*/*");
+					startActivityForResult(intent, REQUEST_IMPORT_TYPING_DATA);
+				}
+			});
+        learnFileButton.setOnClickListener(new View.OnClickListener() {
+				@Override
+				public void onClick(View v) {
+					Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+					intent.addCategory(Intent.CATEGORY_OPENABLE);
+					intent.setType("text/*");
+					startActivityForResult(intent, REQUEST_LEARN_TEXT_FILE);
+				}
+			});
+
         // NEW: Load the AdMob Banner Ad in the footer
         AdView mAdView = findViewById(R.id.adView);
         AdRequest adRequest = new AdRequest.Builder().build();
         mAdView.loadAd(adRequest);
     }
 
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+        if (resultCode != RESULT_OK || data == null || data.getData() == null) return;
+
+        if (requestCode == REQUEST_EXPORT_TYPING_DATA) {
+            exportTypingData(data.getData());
+        } else if (requestCode == REQUEST_IMPORT_TYPING_DATA) {
+            importTypingData(data.getData());
+        } else if (requestCode == REQUEST_LEARN_TEXT_FILE) {
+            learnTextFile(data.getData());
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        // Lets a running export/import finish, then ends the thread
+        executor.shutdown();
+    }
+
     @Override
     protected void onPause() {
         super.onPause();
@@ -113,6 +190,108 @@ public class SettingsActivity extends Activity {
         editor.apply();
     }
 
+    /**
+     * Writes every language's learned model to the chosen document (Background Thread).
+     */
+    private void exportTypingData(final Uri uri) {
+        final Context appContext = getApplicationContext();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                String message;
+                OutputStream out = null;
+                try {
+                    out = appContext.getContentResolver().openOutputStream(uri);
+                    if (out == null) throw new IOException("Cannot open " + uri);
+                    int languages = PredictionEngine.exportModels(appContext, out);
+                    message = "Typing data exported (" + languages + " language" + (languages == 1 ? "" : "s") + ")";
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    message = "Export failed: " + e.getMessage();
+                } finally {
+                    closeQuietly(out);
+                }
+                showToast(appContext, message);
+            }
+        });
+    }
+
+    /**
+     * Replaces the learned models with the ones in the chosen export (Background Thread).
+     */
+    private void importTypingData(final Uri uri) {
+        final Context appContext = getApplicationContext();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                String message;
+                InputStream in = null;
+                try {
+                    in = appContext.getContentResolver().openInputStream(uri);
+                    if (in == null) throw new IOException("Cannot open " + uri);
+                    int languages = PredictionEngine.importModels(appContext, new BufferedInputStream(in));
+                    message = "Typing data imported (" + languages + " language" + (languages == 1 ? "" : "s") + ")";
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    message = "Import failed: " + e.getMessage();
+                } finally {
+                    closeQuietly(in);
+                }
+                showToast(appContext, message);
+            }
+        });
+    }
+
+    /**
+     * Seeds the keyboard's vocabulary and word pairs from a whole text file (Background Thread).
+     */
+    private void learnTextFile(final Uri uri) {
+        final Context appContext = getApplicationContext();
+        showToast(appContext, "Learning from the file...");
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                String message;
+                ParcelFileDescriptor descriptor = null;
+                FileInputStream in = null;
+                try {
+                    descriptor = appContext.getContentResolver().openFileDescriptor(uri, "r");
+                    if (descriptor == null) throw new IOException("Cannot open " + uri);
+                    in = new FileInputStream(descriptor.getFileDescriptor());
+                    long start = System.currentTimeMillis();
+                    TextStatistics learned = CorpusImporter.importCorpus(appContext, in.getChannel());
+                    long seconds = (System.currentTimeMillis() - start + 500) / 1000;
+                    message = "Learned " + learned.getWordCount() + " words and " + learned.getBigramCount()
+                            + " word pairs in " + seconds + " s";
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    message = "Could not learn from the file: " + e.getMessage();
+                } finally {
+                    closeQuietly(in);
+                    closeQuietly(descriptor);
+                }
+                showToast(appContext, message);
+            }
+        });
+    }
+
+    private void showToast(final Context context, final String message) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                Toast.makeText(context, message, Toast.LENGTH_LONG).show();
+            }
+        });
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) return;
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+
     private void saveApiKey() {
         SharedPreferences.Editor editor = sharedPreferences.edit();
         String apiKeyToSave = apiKeyEditText.getText().toString().trim();
@@ -0,0 +1,255 @@
+package com.app.bubble;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Immutable map for the prediction model snapshots.
+ * A hash trie: inner nodes have BRANCHES children picked by the key's hash, from its top bits down,
+ * and leaves keep up to MAX_LEAF entries in flat arrays. A new version copies only the nodes on the
+ * path to each changed leaf and that leaf, so a publish costs O(changes x log n) and everything else
+ * is shared with the versions before it; readers never see a node being modified.
+ */
+public final class SnapshotMap<K, V> {
+
+    public interface EntryVisitor<K, V> {
+        void visit(K key, V value);
+    }
+
+    // Hash bits per trie level, so an inner node has BRANCHES children
+    private static final int BITS = 4;
+    private static final int BRANCHES = 1 << BITS;
+    // A leaf with more entries splits into an inner node
+    private static final int MAX_LEAF = 64;
+    // The 32 bit hash has bits for this many levels; leaves there only hold colliding keys
+    private static final int MAX_DEPTH = 32 / BITS;
+
+    /**
+     * Entries under one trie prefix, sorted by hash (unsigned); keys with the same hash are adjacent.
+     */
+    private static final class Leaf {
+        final int[] hashes;
+        final Object[] keys;
+        final Object[] values;
+
+        Leaf(int[] hashes, Object[] keys, Object[] values) {
+            this.hashes = hashes;
+            this.keys = keys;
+            this.values = values;
+        }
+
+        /**
+         * Index of the key, or -1 if it is absent.
+         */
+        int find(Object key, int hash) {
+            int low = 0;
+            int high = hashes.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (lessThan(hashes[mid], hash)) low = mid + 1;
+                else high = mid;
+            }
+            for (int i = low; i < hashes.length && hashes[i] == hash; i++) {
+                if (keys[i].equals(key)) return i;
+            }
+            return -1;
+        }
+    }
+
+    // A Leaf, an Object[] of BRANCHES children (null where empty), or null for an empty map
+    private final Object root;
+    private final int size;
+
+    public SnapshotMap() {
+        this(null, 0);
+    }
+
+    private SnapshotMap(Object root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(K key) {
+        int hash = hash(key);
+        Object node = root;
+        for (int depth = 0; node instanceof Object[]; depth++) {
+            node = ((Object[]) node)[branch(hash, depth)];
+        }
+        if (node == null) return null;
+        Leaf leaf = (Leaf) node;
+        int i = leaf.find(key, hash);
+        return i >= 0 ? (V) leaf.values[i] : null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns a new version with the given entries added or replaced. This map is left unchanged.
+     */
+    public SnapshotMap<K, V> plus(Map<K, V> changes) {
+        if (changes.isEmpty()) return this;
+
+        // Sorted by hash: the (sign-flipped) hash in the high half, the entry's index in the low half
+        Object[] entries = changes.entrySet().toArray();
+        long[] order = new long[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            int hash = hash(((Map.Entry<?, ?>) entries[i]).getKey());
+            order[i] = ((long) (hash ^ Integer.MIN_VALUE) << 32) | i;
+        }
+        Arrays.sort(order);
+        int[] hashes = new int[entries.length];
+        Object[] keys = new Object[entries.length];
+        Object[] values = new Object[entries.length];
+        for (int i = 0; i < order.length; i++) {
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>) entries[(int) order[i]];
+            hashes[i] = (int) (order[i] >>> 32) ^ Integer.MIN_VALUE;
+            keys[i] = entry.getKey();
+            values[i] = entry.getValue();
+        }
+
+        Insertion insertion = new Insertion(hashes, keys, values);
+        Object changed = insertion.insert(root, 0, 0, hashes.length);
+        return new SnapshotMap<>(changed, size + insertion.added);
+    }
+
+    public void forEach(EntryVisitor<K, V> visitor) {
+        visit(root, visitor);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void visit(Object node, EntryVisitor<K, V> visitor) {
+        if (node instanceof Object[]) {
+            for (Object child : (Object[]) node) visit(child, visitor);
+        } else if (node != null) {
+            Leaf leaf = (Leaf) node;
+            for (int i = 0; i < leaf.keys.length; i++) visitor.visit((K) leaf.keys[i], (V) leaf.values[i]);
+        }
+    }
+
+    /**
+     * One plus(): the sorted changes, merged into copies of the nodes they reach.
+     */
+    private static final class Insertion {
+        private final int[] hashes;
+        private final Object[] keys;
+        private final Object[] values;
+        int added;
+
+        Insertion(int[] hashes, Object[] keys, Object[] values) {
+            this.hashes = hashes;
+            this.keys = keys;
+            this.values = values;
+        }
+
+        /**
+         * Copy of 'node' (at 'depth') with the changes [from, to) in it, which all fall under it.
+         */
+        Object insert(Object node, int depth, int from, int to) {
+            if (node == null) {
+                added += to - from;
+                return build(hashes, keys, values, from, to, depth);
+            }
+            if (node instanceof Leaf) return merge((Leaf) node, depth, from, to);
+
+            Object[] children = ((Object[]) node).clone();
+            while (from < to) {
+                int branch = branch(hashes[from], depth);
+                int end = from + 1;
+                while (end < to && branch(hashes[end], depth) == branch) end++;
+                children[branch] = insert(children[branch], depth + 1, from, end);
+                from = end;
+            }
+            return children;
+        }
+
+        private Object merge(Leaf leaf, int depth, int from, int to) {
+            int[] oldHashes = leaf.hashes;
+            int capacity = oldHashes.length + to - from;
+            int[] mergedHashes = new int[capacity];
+            Object[] mergedKeys = new Object[capacity];
+            Object[] mergedValues = new Object[capacity];
+            int n = 0;
+            int i = 0;
+            int j = from;
+            while (i < oldHashes.length || j < to) {
+                if (j == to || (i < oldHashes.length && lessThan(oldHashes[i], hashes[j]))) {
+                    mergedHashes[n] = oldHashes[i];
+                    mergedKeys[n] = leaf.keys[i];
+                    mergedValues[n++] = leaf.values[i++];
+                    continue;
+                }
+                if (i == oldHashes.length || oldHashes[i] != hashes[j]) {
+                    added++;
+                    mergedHashes[n] = hashes[j];
+                    mergedKeys[n] = keys[j];
+                    mergedValues[n++] = values[j++];
+                    continue;
+                }
+
+                // Same hash on both sides: old keys not replaced stay, then every change of that hash
+                int hash = hashes[j];
+                int changesEnd = j;
+                while (changesEnd < to && hashes[changesEnd] == hash) changesEnd++;
+                for (; i < oldHashes.length && oldHashes[i] == hash; i++) {
+                    boolean replaced = false;
+                    for (int k = j; k < changesEnd && !replaced; k++) replaced = keys[k].equals(leaf.keys[i]);
+                    if (replaced) {
+                        added--;
+                        continue;
+                    }
+                    mergedHashes[n] = hash;
+                    mergedKeys[n] = leaf.keys[i];
+                    mergedValues[n++] = leaf.values[i];
+                }
+                for (; j < changesEnd; j++) {
+                    added++;
+                    mergedHashes[n] = hash;
+                    mergedKeys[n] = keys[j];
+                    mergedValues[n++] = values[j];
+                }
+            }
+            if (n == capacity && n <= MAX_LEAF) return new Leaf(mergedHashes, mergedKeys, mergedValues);
+            return build(mergedHashes, mergedKeys, mergedValues, 0, n, depth);
+        }
+    }
+
+    /**
+     * Node for the sorted entries [from, to) at 'depth': a leaf if they fit in one, else an inner node.
+     */
+    private static Object build(int[] hashes, Object[] keys, Object[] values, int from, int to, int depth) {
+        if (to - from <= MAX_LEAF || depth >= MAX_DEPTH) {
+            return new Leaf(Arrays.copyOfRange(hashes, from, to), Arrays.copyOfRange(keys, from, to),
+                    Arrays.copyOfRange(values, from, to));
+        }
+        Object[] children = new Object[BRANCHES];
+        while (from < to) {
+            int branch = branch(hashes[from], depth);
+            int end = from + 1;
+            while (end < to && branch(hashes[end], depth) == branch) end++;
+            children[branch] = build(hashes, keys, values, from, end, depth + 1);
+            from = end;
+        }
+        return children;
+    }
+
+    /**
+     * hashCode() spread to the top bits, which pick the branches.
+     */
+    private static int hash(Object key) {
+        return key.hashCode() * 0x9E3779B9;
+    }
+
+    /**
+     * Child of an inner node at 'depth' that a hash falls under: its bits from the top down.
+     */
+    private static int branch(int hash, int depth) {
+        return (hash >>> (32 - BITS * (depth + 1))) & (BRANCHES - 1);
+    }
+
+    private static boolean lessThan(int a, int b) {
+        return (a ^ Integer.MIN_VALUE) < (b ^ Integer.MIN_VALUE);
+    }
+}
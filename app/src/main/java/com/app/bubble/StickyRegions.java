@@ -0,0 +1,92 @@
+package com.app.bubble;
+
+/**
+ * Rows that did not move between two consecutive frames: a header at the top (app bar, search
+ * field) and a footer at the bottom (navigation bar, input box). They are not part of the
+ * scrolling content, so StreamingStitcher leaves them out of the overlap search and keeps a
+ * single copy of each in the output.
+ * Found by comparing the frames row by row from each edge; a region needs some non-blank rows
+ * (a plain margin proves nothing) and may not exceed MAX_FRACTION of the frame, since frames
+ * that did not scroll at all are identical everywhere.
+ */
+public class StickyRegions {
+
+    public static final StickyRegions NONE = new StickyRegions(0, 0);
+
+    // A region taller than this share of the frame is not a bar: the frames did not scroll
+    private static final float MAX_FRACTION = 0.25f;
+    // Non-blank rows a region needs to count
+    private static final int MIN_EVIDENCE_ROWS = 4;
+    // Rows of a LumaPyramid this close (mean difference per cell) are the same
+    private static final float PYRAMID_TOLERANCE = 2f;
+
+    public final int header;
+    public final int footer;
+
+    StickyRegions(int header, int footer) {
+        this.header = header;
+        this.footer = footer;
+    }
+
+    /**
+     * Compares a row of each frame.
+     */
+    private interface Rows {
+        boolean same(int previousRow, int row);
+
+        boolean blank(int row);
+    }
+
+    public static StickyRegions find(final ImageStitcher.RowHashes previous, final ImageStitcher.RowHashes frame) {
+        return find(previous.getHeight(), frame.getHeight(), new Rows() {
+            @Override
+            public boolean same(int previousRow, int row) {
+                return previous.hashes[previousRow] == frame.hashes[row];
+            }
+
+            @Override
+            public boolean blank(int row) {
+                return frame.blank[row];
+            }
+        });
+    }
+
+    public static StickyRegions find(final LumaPyramid previous, final LumaPyramid frame) {
+        final boolean[] blank = frame.getBlankRows();
+        return find(previous.getHeight(), frame.getHeight(), new Rows() {
+            @Override
+            public boolean same(int previousRow, int row) {
+                return LumaPyramid.rowDiff(previous, previousRow, frame, row) <= PYRAMID_TOLERANCE;
+            }
+
+            @Override
+            public boolean blank(int row) {
+                return blank[row];
+            }
+        });
+    }
+
+    private static StickyRegions find(int previousHeight, int height, Rows rows) {
+        int limit = (int) (Math.min(previousHeight, height) * MAX_FRACTION);
+
+        // Header: same rows from the top
+        int header = 0;
+        int evidence = 0;
+        while (header <= limit && rows.same(header, header)) {
+            if (!rows.blank(header)) evidence++;
+            header++;
+        }
+        if (header > limit || evidence < MIN_EVIDENCE_ROWS) header = 0;
+
+        // Footer: same rows from the bottom
+        int footer = 0;
+        evidence = 0;
+        while (footer <= limit && rows.same(previousHeight - 1 - footer, height - 1 - footer)) {
+            if (!rows.blank(height - 1 - footer)) evidence++;
+            footer++;
+        }
+        if (footer > limit || evidence < MIN_EVIDENCE_ROWS) footer = 0;
+
+        return header == 0 && footer == 0 ? NONE : new StickyRegions(header, footer);
+    }
+}
@@ -0,0 +1,115 @@
+package com.app.bubble;
+
+import android.graphics.Bitmap;
+import java.io.File;
+
+/**
+ * Stitches scrolling screenshots one frame at a time, as they are captured.
+ * The output is a LongImage made of fixed-height tiles: a new frame only adds the rows below its
+ * overlap with the previous frame, and rows already stitched are never copied again.
+ * Only the previous frame's row hashes are kept, so a frame may be recycled once it is added.
+ * UPDATED: No height limit. Given a spill directory, the output keeps a fixed number of tiles in memory.
+ * NEW: Coarse-to-fine mode: overlaps are found on a LumaPyramid (tolerant to anti-aliasing and
+ * scroll jitter) instead of exact row hashes.
+ * NEW: Rows that stay put between frames (StickyRegions: app bars, navigation bars) are left out
+ * of the overlap search. The output keeps the first frame's header and the last frame's footer.
+ * Not thread-safe.
+ */
+public class StreamingStitcher {
+
+    private final LongImage image;
+    private final boolean coarseToFine;
+    private ImageStitcher.RowHashes previous;
+    private LumaPyramid previousPyramid;
+
+    /**
+     * Stitcher whose output stays in memory.
+     */
+    public StreamingStitcher(int width) {
+        this(width, null);
+    }
+
+    /**
+     * Stitcher whose older tiles are written to 'spillDir' (see LongImage).
+     */
+    public StreamingStitcher(int width, File spillDir) {
+        this(width, spillDir, false);
+    }
+
+    /**
+     * Stitcher that matches frames with the coarse-to-fine search when 'coarseToFine' is set.
+     */
+    public StreamingStitcher(int width, File spillDir, boolean coarseToFine) {
+        image = new LongImage(width, spillDir);
+        this.coarseToFine = coarseToFine;
+    }
+
+    /**
+     * Appends a frame below the previous one, minus the rows they share and its sticky header.
+     * Returns the overlap found with the previous frame (Overlap.NONE for the first one), counted
+     * between the rows below the header and above the footer; it is only cut when its confidence
+     * reaches ImageStitcher.MIN_CONFIDENCE.
+     * May throw OutOfMemoryError when a new tile cannot be allocated.
+     */
+    public ImageStitcher.Overlap addFrame(Bitmap frame) {
+        int width = Math.min(image.getWidth(), frame.getWidth());
+        int height = frame.getHeight();
+        ImageStitcher.Overlap overlap = ImageStitcher.Overlap.NONE;
+        StickyRegions sticky = StickyRegions.NONE;
+        boolean[] blank;
+        if (coarseToFine) {
+            LumaPyramid pyramid = LumaPyramid.build(frame, width);
+            if (previousPyramid != null) {
+                sticky = StickyRegions.find(previousPyramid, pyramid);
+                overlap = LumaPyramid.findOverlap(
+                        previousPyramid.slice(sticky.header, previousPyramid.getHeight() - sticky.footer),
+                        pyramid.slice(sticky.header, height - sticky.footer));
+            }
+            blank = pyramid.getBlankRows();
+            previousPyramid = pyramid;
+        } else {
+            ImageStitcher.RowHashes hashes = ImageStitcher.hashRows(frame, width);
+            if (previous != null) {
+                sticky = StickyRegions.find(previous, hashes);
+                overlap = ImageStitcher.findOverlap(
+                        previous.slice(sticky.header, previous.getHeight() - sticky.footer),
+                        hashes.slice(sticky.header, height - sticky.footer));
+            }
+            blank = hashes.blank;
+            previous = hashes;
+        }
+
+        // The output ends with the previous frame's footer: it goes below the new rows instead
+        image.truncate(image.getHeight() - sticky.footer);
+        int shared = overlap.confidence >= ImageStitcher.MIN_CONFIDENCE ? overlap.rows : 0;
+        image.appendRows(frame, sticky.header + shared, height, blank);
+        return overlap;
+    }
+
+    /**
+     * The stitched output. Keeps growing while frames are added.
+     */
+    public LongImage getImage() {
+        return image;
+    }
+
+    public int getHeight() {
+        return image.getHeight();
+    }
+
+    /**
+     * Copies the first 'maxHeight' rows of the output into one bitmap, or null if nothing was added.
+     */
+    public Bitmap toBitmap(int maxHeight) {
+        return image.renderWindow(0, maxHeight);
+    }
+
+    /**
+     * Frees the output. The stitcher is empty afterwards.
+     */
+    public void recycle() {
+        image.release();
+        previous = null;
+        previousPyramid = null;
+    }
+}
@@ -0,0 +1,149 @@
+package com.app.bubble;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Incremental prefix search for the word being typed.
+ * Opened at the start of a word, it moves one char per keystroke: a cursor into the learned
+ * WordTrie and the index range of the base dictionary are narrowed from the previous char's state,
+ * and every state is kept on a stack, so Backspace just pops one. Per-key cost therefore does not
+ * grow with the prefix, and the suggestions of a state are computed at most once.
+ * Prefixes of up to HOT_PREFIX chars are answered by the base dictionary's precomputed table, so
+ * its range is only looked up once, at the first longer prefix, and narrowed from there.
+ * Not thread-safe: use from one thread (the keyboard's prediction worker).
+ */
+public class SuggestionSession {
+
+    private static final int MAX_SUGGESTIONS = 5;
+    private static final int HOT_PREFIX = 2;
+    private static final int NO_RANGE = -1;
+
+    private static final class State {
+        final String prefix;            // As typed
+        final String key;               // Case-folded prefix
+        final WordTrie.Cursor learned;  // Null once no learned word continues the prefix
+        final int baseFrom;             // Base dictionary words [baseFrom, baseTo) share the prefix,
+        final int baseTo;               // NO_RANGE while the prefix is short
+        List<String> suggestions;       // Computed on first request
+
+        State(String prefix, String key, WordTrie.Cursor learned, int baseFrom, int baseTo) {
+            this.prefix = prefix;
+            this.key = key;
+            this.learned = learned;
+            this.baseFrom = baseFrom;
+            this.baseTo = baseTo;
+        }
+    }
+
+    private final PredictionEngine engine;
+    private final BinaryDictionary baseDictionary;
+    private final List<State> states = new ArrayList<>();
+    private WordTrie learnedWords;
+
+    SuggestionSession(PredictionEngine engine) {
+        this.engine = engine;
+        this.baseDictionary = engine.getBaseDictionary();
+        restart("");
+    }
+
+    public String getPrefix() {
+        return top().prefix;
+    }
+
+    /**
+     * Extends the prefix by one typed char.
+     */
+    public void advance(char c) {
+        if (learnedWords != engine.getLearnedWords()) {
+            restart(getPrefix());
+        }
+        State current = top();
+        WordTrie.Cursor learned = current.learned;
+        int from = current.baseFrom;
+        int to = current.baseTo;
+        String key = current.key;
+
+        // Folding may turn one char into several (e.g. a dotted capital I)
+        String folded = String.valueOf(c).toLowerCase();
+        for (int i = 0; i < folded.length(); i++) {
+            char fc = folded.charAt(i);
+            if (learned != null) learned = learned.advance(fc);
+            if (baseDictionary != null && from != NO_RANGE && from < to) {
+                int[] range = baseDictionary.narrow(from, to, key.length(), fc);
+                from = range[0];
+                to = range[1];
+            }
+            key += fc;
+        }
+        if (baseDictionary != null && from == NO_RANGE && key.length() > HOT_PREFIX) {
+            int[] range = baseDictionary.prefixRange(key);
+            from = range[0];
+            to = range[1];
+        }
+        states.add(new State(current.prefix + c, key, learned, from, to));
+    }
+
+    /**
+     * Removes the last typed char (Backspace). Does nothing at the start of the word.
+     */
+    public void back() {
+        if (states.size() > 1) states.remove(states.size() - 1);
+    }
+
+    /**
+     * Brings the session to 'word' by stepping back to the longest common prefix and advancing
+     * from there. For the usual one-key change this is a single advance() or back().
+     */
+    public void moveTo(String word) {
+        String prefix = getPrefix();
+        int common = 0;
+        int max = Math.min(prefix.length(), word.length());
+        while (common < max && prefix.charAt(common) == word.charAt(common)) common++;
+
+        while (getPrefix().length() > common) back();
+        for (int i = common; i < word.length(); i++) advance(word.charAt(i));
+    }
+
+    /**
+     * Same result as PredictionEngine.getSuggestions(getPrefix()).
+     */
+    public List<String> getSuggestions() {
+        if (learnedWords != engine.getLearnedWords()) {
+            restart(getPrefix());
+        }
+        State state = top();
+        if (state.suggestions != null) return new ArrayList<>(state.suggestions);
+
+        List<String> results = new ArrayList<>();
+        if (!state.prefix.isEmpty()) {
+            if (state.learned != null) {
+                PredictionEngine.addSuggestions(results, state.learned.topWords(WordTrie.TOP_K), state.prefix);
+            }
+            if (results.size() < MAX_SUGGESTIONS && baseDictionary != null) {
+                // Short prefixes are answered by the precomputed table, longer ones by their range
+                List<String> base = state.baseFrom == NO_RANGE
+                        ? baseDictionary.topWords(state.prefix, WordTrie.TOP_K)
+                        : baseDictionary.topWordsInRange(state.baseFrom, state.baseTo, WordTrie.TOP_K);
+                PredictionEngine.addSuggestions(results, base, state.prefix);
+            }
+        }
+        state.suggestions = results;
+        return new ArrayList<>(results);
+    }
+
+    /**
+     * Rebuilds the state stack for 'prefix' against the current learned words
+     * (needed only when a new model version was published mid-word).
+     */
+    private void restart(String prefix) {
+        learnedWords = engine.getLearnedWords();
+        states.clear();
+        states.add(new State("", "", learnedWords.cursor(), NO_RANGE, NO_RANGE));
+        for (int i = 0; i < prefix.length(); i++) advance(prefix.charAt(i));
+    }
+
+    private State top() {
+        return states.get(states.size() - 1);
+    }
+}
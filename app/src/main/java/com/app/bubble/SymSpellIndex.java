@@ -0,0 +1,195 @@
+package com.app.bubble;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Auto-correct index using precomputed deletion neighbourhoods (SymSpell).
+ * Every word registers the strings reachable from its first PREFIX_LENGTH chars by deleting
+ * up to MAX_EDIT_DISTANCE chars. A lookup generates the same deletes for the typo, so only
+ * words sharing a delete are ever compared, instead of the whole dictionary.
+ * Keys are expected to be case-folded by the caller.
+ * Instances are immutable: withKeys() returns a new version sharing most of its storage,
+ * so lookups can run on any thread while a writer builds the next version.
+ */
+public class SymSpellIndex {
+
+    public static final int MAX_EDIT_DISTANCE = 2;
+
+    // Deletes are only generated on the head of the word, which bounds memory per word
+    private static final int PREFIX_LENGTH = 7;
+
+    private static final String[] NO_WORDS = new String[0];
+
+    // Delete variant -> keys that produce it
+    private final SnapshotMap<String, String[]> deletes;
+    private final int size;
+
+    public SymSpellIndex() {
+        this(new SnapshotMap<String, String[]>(), 0);
+    }
+
+    private SymSpellIndex(SnapshotMap<String, String[]> deletes, int size) {
+        this.deletes = deletes;
+        this.size = size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns a new version that also indexes the given keys, each of which must not be indexed yet.
+     * Cheap enough to call for every batch of newly learned words.
+     */
+    public SymSpellIndex withKeys(Collection<String> keys) {
+        Map<String, String[]> changes = new HashMap<>();
+        int added = 0;
+        for (String key : keys) {
+            if (key == null || key.isEmpty()) continue;
+            added++;
+
+            String head = key.length() > PREFIX_LENGTH ? key.substring(0, PREFIX_LENGTH) : key;
+            Set<String> variants = new HashSet<>();
+            variants.add(head);
+            collectDeletes(head, MAX_EDIT_DISTANCE, variants);
+
+            for (String variant : variants) {
+                String[] bucket = changes.get(variant);
+                if (bucket == null) bucket = deletes.get(variant);
+                if (bucket == null) {
+                    bucket = new String[] { key };
+                } else {
+                    // Buckets are shared with older versions, never grow them in place
+                    bucket = Arrays.copyOf(bucket, bucket.length + 1);
+                    bucket[bucket.length - 1] = key;
+                }
+                changes.put(variant, bucket);
+            }
+        }
+        if (added == 0) return this;
+        return new SymSpellIndex(deletes.plus(changes), size + added);
+    }
+
+    /**
+     * Collects every indexed key at the smallest edit distance (<= maxDistance) from the input
+     * and returns that distance, or maxDistance + 1 if nothing is close enough.
+     * The input itself is found at distance 0 when it is indexed.
+     */
+    public int closest(String input, int maxDistance, List<String> results) {
+        if (maxDistance > MAX_EDIT_DISTANCE) maxDistance = MAX_EDIT_DISTANCE;
+        if (input == null || input.isEmpty() || maxDistance < 0) return maxDistance + 1;
+
+        int headLength = Math.min(input.length(), PREFIX_LENGTH);
+        int bestDistance = maxDistance;
+
+        // Breadth-first over the input deletes, so fewer deletes are always tried first. A delete
+        // is the mask of the head positions it drops, so visited ones fit in a flag per mask, and
+        // of a run of equal chars only the first is dropped (the others give the same string).
+        int[] frontier = new int[1 << headLength];
+        int[] next = new int[1 << headLength];
+        boolean[] seenMasks = new boolean[1 << headLength];
+        int frontierSize = 1;
+        seenMasks[0] = true;
+        char[] variant = new char[headLength];
+        Set<String> seenKeys = new HashSet<>();
+        int[][] rows = new int[2][input.length() + 8];
+
+        for (int deleted = 0; deleted <= maxDistance && frontierSize > 0; deleted++) {
+            // A delete of depth d can only lead to words at distance >= d
+            if (deleted > bestDistance) break;
+
+            int nextSize = 0;
+            for (int f = 0; f < frontierSize; f++) {
+                int mask = frontier[f];
+                int length = 0;
+                for (int i = 0; i < headLength; i++) {
+                    if ((mask & (1 << i)) == 0) variant[length++] = input.charAt(i);
+                }
+                String[] bucket = deletes.get(new String(variant, 0, length));
+                if (bucket == null) bucket = NO_WORDS;
+
+                for (String key : bucket) {
+                    if (Math.abs(key.length() - input.length()) > bestDistance) continue;
+                    if (!seenKeys.add(key)) continue;
+
+                    int distance = distance(input, key, bestDistance, rows);
+                    if (distance > bestDistance) continue;
+                    if (distance < bestDistance) {
+                        bestDistance = distance;
+                        results.clear();
+                    }
+                    results.add(key);
+                }
+
+                if (deleted < maxDistance && length > 1) {
+                    int previousChar = -1;
+                    for (int i = 0; i < headLength; i++) {
+                        if ((mask & (1 << i)) != 0) continue;
+                        char c = input.charAt(i);
+                        int shorter = mask | (1 << i);
+                        if (c != previousChar && !seenMasks[shorter]) {
+                            seenMasks[shorter] = true;
+                            next[nextSize++] = shorter;
+                        }
+                        previousChar = c;
+                    }
+                }
+            }
+            int[] swap = frontier;
+            frontier = next;
+            next = swap;
+            frontierSize = nextSize;
+        }
+        return results.isEmpty() ? maxDistance + 1 : bestDistance;
+    }
+
+    private static void collectDeletes(String word, int depth, Set<String> out) {
+        if (depth == 0 || word.length() <= 1) return;
+        for (int i = 0; i < word.length(); i++) {
+            String shorter = word.substring(0, i) + word.substring(i + 1);
+            if (out.add(shorter)) {
+                collectDeletes(shorter, depth - 1, out);
+            }
+        }
+    }
+
+    /**
+     * Levenshtein distance with two rows reused across one lookup. Gives up as soon as every
+     * cell of a row exceeds the bound and returns bound + 1.
+     */
+    private static int distance(String a, String b, int bound, int[][] rows) {
+        int cols = b.length() + 1;
+        if (rows[0].length < cols) {
+            rows[0] = new int[cols * 2];
+            rows[1] = new int[cols * 2];
+        }
+        int[] prev = rows[0];
+        int[] cur = rows[1];
+
+        for (int j = 0; j < cols; j++) prev[j] = j;
+
+        for (int i = 1; i <= a.length(); i++) {
+            cur[0] = i;
+            int rowMin = i;
+            char ca = a.charAt(i - 1);
+            for (int j = 1; j < cols; j++) {
+                int cost = (ca == b.charAt(j - 1)) ? 0 : 1;
+                int value = Math.min(Math.min(prev[j] + 1, cur[j - 1] + 1), prev[j - 1] + cost);
+                cur[j] = value;
+                if (value < rowMin) rowMin = value;
+            }
+            if (rowMin > bound) return bound + 1;
+            int[] swap = prev;
+            prev = cur;
+            cur = swap;
+        }
+        return prev[cols - 1];
+    }
+}
@@ -0,0 +1,394 @@
+package com.app.bubble;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Word and word-pair counts gathered from a body of text (a paste, an import) before they are
+ * merged into the prediction model in one go. Words get local IDs and pairs are packed into a
+ * LongIntMap key, so counting allocates per distinct word, not per occurrence.
+ * Memory is bounded by MAX_WORDS / MAX_BIGRAMS distinct entries (or the bounds given to the
+ * constructor). Like the engine's vocabulary, a full table only takes a new entry once it was used
+ * more often than the entries the last eviction dropped (counted in a CountMinSketch meanwhile);
+ * it then evicts its least used half, whose counts go to the sketch so they can earn their
+ * way back. Counting starts over on admission: the sketch may overestimate.
+ * Not thread-safe, but partial counts made on different threads can be combined with merge().
+ */
+public class TextStatistics {
+
+    public interface Visitor {
+        void visitWord(String word, int uses);
+        void visitBigram(String previous, String next, int uses);
+    }
+
+    public static final int MAX_WORDS = 20000;
+    public static final int MAX_BIGRAMS = 50000;
+
+    // Unigram keys are plain IDs, bigram keys carry this bit
+    private static final long BIGRAM = 1L << 40;
+    // IDs are packed into 20 bits in a bigram key
+    private static final int MAX_ID_COUNT = 1 << 20;
+
+    private final int maxWords;
+    private final int maxBigrams;
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    // Indexed by ID; null where an evicted word left an ID for reuse
+    private final List<String> words = new ArrayList<>();
+    private int[] freeIds = new int[0];
+    private int freeCount;
+    private LongIntMap counts = new LongIntMap();
+    private int wordCount;
+    private int bigramCount;
+    // Last word counted, continued across add() calls; -1 after a break
+    private int previous = -1;
+
+    // Created once a table is first full
+    private CountMinSketch sketch;
+    // Uses a new word / pair needs once its table is full: the highest count the last eviction dropped
+    private int wordThreshold;
+    private int pairThreshold;
+
+    public TextStatistics() {
+        this(MAX_WORDS, MAX_BIGRAMS);
+    }
+
+    /**
+     * Statistics with other bounds, e.g. for a large corpus (at most 2^20 distinct words).
+     */
+    public TextStatistics(int maxWords, int maxBigrams) {
+        this.maxWords = Math.max(2, Math.min(maxWords, MAX_ID_COUNT));
+        this.maxBigrams = Math.max(2, maxBigrams);
+    }
+
+    /**
+     * Counts a chunk of tokens from WordTokenizer; BREAK tokens end the current word pair chain.
+     */
+    public void add(List<String> tokens) {
+        for (int i = 0; i < tokens.size(); i++) {
+            String token = tokens.get(i);
+            int id = token.isEmpty() ? -1 : addWord(token, 1);
+            if (id < 0) {
+                previous = -1;
+                continue;
+            }
+            // Read after addWord, which may have evicted the previous word
+            if (previous >= 0) addPair(previous, id, 1);
+            previous = id;
+        }
+    }
+
+    /**
+     * Adds counts made from another part of the text (within the bounds of these statistics).
+     */
+    public void merge(TextStatistics other) {
+        // Words first, so that their pairs find them
+        for (int id = 0; id < other.words.size(); id++) {
+            String word = other.words.get(id);
+            if (word != null) addWord(word, other.counts.get(id, 0));
+        }
+        other.forEach(new Visitor() {
+            @Override
+            public void visitWord(String word, int uses) {
+            }
+
+            @Override
+            public void visitBigram(String previous, String next, int uses) {
+                Integer previousId = ids.get(previous);
+                Integer nextId = ids.get(next);
+                if (previousId != null && nextId != null) addPair(previousId, nextId, uses);
+            }
+        });
+        // The texts were not contiguous
+        previous = -1;
+    }
+
+    /**
+     * New statistics with only the 'maxWords' most used words and the 'maxBigrams' most used
+     * pairs between those words.
+     */
+    public TextStatistics mostFrequent(int maxWords, int maxBigrams) {
+        final int[] wordUses = new int[words.size()];
+        final long[] pairKeys = new long[bigramCount];
+        final int[] pairUses = new int[bigramCount];
+        collect(wordUses, pairKeys, pairUses);
+
+        TextStatistics top = new TextStatistics(maxWords, maxBigrams);
+        boolean[] keptWords = selectTop(wordUses, maxWords);
+        for (int id = 0; id < wordUses.length; id++) {
+            if (keptWords[id]) top.addWord(words.get(id), wordUses[id]);
+        }
+
+        for (int i = 0; i < pairKeys.length; i++) {
+            if (!keptWords[previousOf(pairKeys[i])] || !keptWords[nextOf(pairKeys[i])]) pairUses[i] = 0;
+        }
+        boolean[] keptPairs = selectTop(pairUses, maxBigrams);
+        for (int i = 0; i < pairKeys.length; i++) {
+            if (!keptPairs[i]) continue;
+            int previousId = top.ids.get(words.get(previousOf(pairKeys[i])));
+            int nextId = top.ids.get(words.get(nextOf(pairKeys[i])));
+            top.addPair(previousId, nextId, pairUses[i]);
+        }
+        return top;
+    }
+
+    public boolean isEmpty() {
+        return wordCount == 0;
+    }
+
+    public int getWordCount() {
+        return wordCount;
+    }
+
+    public int getBigramCount() {
+        return bigramCount;
+    }
+
+    public void forEach(final Visitor visitor) {
+        counts.forEach(new LongIntMap.EntryVisitor() {
+            @Override
+            public void visit(long key, int uses) {
+                if ((key & BIGRAM) == 0) {
+                    visitor.visitWord(words.get((int) key), uses);
+                } else {
+                    visitor.visitBigram(words.get(previousOf(key)), words.get(nextOf(key)), uses);
+                }
+            }
+        });
+    }
+
+    /**
+     * Counts uses of a word. Returns its ID, or -1 if the table is full and the word has not
+     * earned a place yet.
+     */
+    private int addWord(String word, int uses) {
+        Integer known = ids.get(word);
+        if (known != null) {
+            counts.add(known, uses);
+            return known;
+        }
+        if (wordCount >= maxWords) {
+            int estimate = sketch().add(word, uses);
+            if (estimate <= wordThreshold) return -1;
+            evictWords();
+        }
+
+        int id;
+        if (freeCount > 0) {
+            id = freeIds[--freeCount];
+            words.set(id, word);
+        } else {
+            id = words.size();
+            words.add(word);
+        }
+        ids.put(word, id);
+        counts.put(id, uses);
+        wordCount++;
+        return id;
+    }
+
+    private void addPair(int previous, int next, int uses) {
+        long key = BIGRAM | ((long) previous << 20) | next;
+        if (counts.containsKey(key)) {
+            counts.add(key, uses);
+            return;
+        }
+        if (bigramCount >= maxBigrams) {
+            int estimate = sketch().add(words.get(previous), words.get(next), uses);
+            if (estimate <= pairThreshold) return;
+            evictPairs();
+        }
+        counts.put(key, uses);
+        bigramCount++;
+    }
+
+    /**
+     * Drops the least used half of the words and their pairs. Kept words keep their IDs.
+     * Words at the cutoff count are kept by the hash of their text, not in slot order: that would
+     * pick them by the hash of their ID, and the survivors of a few evictions would crowd into one
+     * part of the table.
+     */
+    private void evictWords() {
+        int[] wordUses = new int[words.size()];
+        long[] pairKeys = new long[bigramCount];
+        int[] pairUses = new int[bigramCount];
+        collect(wordUses, pairKeys, pairUses);
+        int cutoff = cutoff(wordUses, maxWords / 2);
+        int[] tieOrder = new int[wordUses.length];
+        for (int id = 0; id < wordUses.length; id++) {
+            if (words.get(id) != null) tieOrder[id] = mix(words.get(id).hashCode());
+        }
+        boolean[] kept = keepTop(wordUses, cutoff, maxWords / 2, tieOrder);
+
+        // Sized for a full table, so copying in slot order never builds up long probe chains
+        LongIntMap remaining = new LongIntMap(maxWords + maxBigrams);
+        for (int id = 0; id < wordUses.length; id++) {
+            if (kept[id]) {
+                remaining.put(id, wordUses[id]);
+            } else if (words.get(id) != null) {
+                sketch.add(words.get(id), wordUses[id]);
+            }
+        }
+        bigramCount = 0;
+        for (int i = 0; i < pairKeys.length; i++) {
+            int previousId = previousOf(pairKeys[i]);
+            int nextId = nextOf(pairKeys[i]);
+            if (kept[previousId] && kept[nextId]) {
+                remaining.put(pairKeys[i], pairUses[i]);
+                bigramCount++;
+            } else {
+                sketch.add(words.get(previousId), words.get(nextId), pairUses[i]);
+            }
+        }
+
+        if (freeIds.length < wordUses.length) freeIds = new int[wordUses.length];
+        for (int id = wordUses.length - 1; id >= 0; id--) {
+            if (kept[id] || words.get(id) == null) continue;
+            ids.remove(words.get(id));
+            words.set(id, null);
+            freeIds[freeCount++] = id;
+            wordCount--;
+        }
+        if (previous >= 0 && !kept[previous]) previous = -1;
+        counts = remaining;
+        wordThreshold = cutoff;
+    }
+
+    /**
+     * Drops the least used half of the pairs (ties as in evictWords).
+     */
+    private void evictPairs() {
+        int[] wordUses = new int[words.size()];
+        long[] pairKeys = new long[bigramCount];
+        int[] pairUses = new int[bigramCount];
+        collect(wordUses, pairKeys, pairUses);
+        int cutoff = cutoff(pairUses, maxBigrams / 2);
+        int[] tieOrder = new int[pairKeys.length];
+        for (int i = 0; i < pairKeys.length; i++) {
+            String previousWord = words.get(previousOf(pairKeys[i]));
+            String nextWord = words.get(nextOf(pairKeys[i]));
+            tieOrder[i] = mix(previousWord.hashCode() * 31 + nextWord.hashCode());
+        }
+        boolean[] kept = keepTop(pairUses, cutoff, maxBigrams / 2, tieOrder);
+
+        LongIntMap remaining = new LongIntMap(maxWords + maxBigrams);
+        for (int id = 0; id < wordUses.length; id++) {
+            if (words.get(id) != null) remaining.put(id, wordUses[id]);
+        }
+        bigramCount = 0;
+        for (int i = 0; i < pairKeys.length; i++) {
+            if (kept[i]) {
+                remaining.put(pairKeys[i], pairUses[i]);
+                bigramCount++;
+            } else {
+                sketch.add(words.get(previousOf(pairKeys[i])), words.get(nextOf(pairKeys[i])), pairUses[i]);
+            }
+        }
+        counts = remaining;
+        pairThreshold = cutoff;
+    }
+
+    /**
+     * Copies the counts out: word uses by ID (0 for free IDs), and every pair's key and uses.
+     */
+    private void collect(final int[] wordUses, final long[] pairKeys, final int[] pairUses) {
+        counts.forEach(new LongIntMap.EntryVisitor() {
+            int pairs;
+
+            @Override
+            public void visit(long key, int uses) {
+                if ((key & BIGRAM) == 0) {
+                    wordUses[(int) key] = uses;
+                } else {
+                    pairKeys[pairs] = key;
+                    pairUses[pairs++] = uses;
+                }
+            }
+        });
+    }
+
+    private CountMinSketch sketch() {
+        if (sketch == null) sketch = new CountMinSketch();
+        return sketch;
+    }
+
+    private static int previousOf(long key) {
+        return (int) (key >>> 20) & 0xFFFFF;
+    }
+
+    private static int nextOf(long key) {
+        return (int) key & 0xFFFFF;
+    }
+
+    /**
+     * Value of the 'limit'-th largest value (at least 1): at most 'limit' values are above it.
+     */
+    private static int cutoff(int[] values, int limit) {
+        if (values.length <= limit) return 1;
+        int[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return Math.max(1, sorted[values.length - limit]);
+    }
+
+    /**
+     * Marks the values above 'cutoff' (at most 'limit' of them, see cutoff()) and fills up to 'limit'
+     * with values at the cutoff, lowest 'tieOrder' first.
+     */
+    private static boolean[] keepTop(int[] values, int cutoff, int limit, int[] tieOrder) {
+        boolean[] kept = new boolean[values.length];
+        int keepAtCutoff = limit;
+        int tieCount = 0;
+        for (int value : values) {
+            if (value > cutoff) keepAtCutoff--;
+            else if (value == cutoff) tieCount++;
+        }
+        // Highest tie order still kept
+        int bound = Integer.MIN_VALUE;
+        if (keepAtCutoff >= tieCount) {
+            bound = Integer.MAX_VALUE;
+        } else if (keepAtCutoff > 0) {
+            int[] ties = new int[tieCount];
+            int n = 0;
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] == cutoff) ties[n++] = tieOrder[i];
+            }
+            Arrays.sort(ties);
+            bound = ties[keepAtCutoff - 1];
+        }
+        for (int i = 0; i < values.length; i++) {
+            kept[i] = values[i] > cutoff
+                    || (values[i] == cutoff && tieOrder[i] <= bound && keepAtCutoff-- > 0);
+        }
+        return kept;
+    }
+
+    /**
+     * Spreads a String hash, so that similar words do not win ties together.
+     */
+    private static int mix(int hash) {
+        return hash * 0x9E3779B9;
+    }
+
+    /**
+     * Marks the (at most) 'limit' largest non-zero values; at the cutoff value the first ones win.
+     */
+    private static boolean[] selectTop(int[] values, int limit) {
+        boolean[] kept = new boolean[values.length];
+        int cutoff = 1;
+        int keepAtCutoff = Integer.MAX_VALUE;
+        if (values.length > limit) {
+            cutoff = cutoff(values, limit);
+            keepAtCutoff = limit;
+            for (int value : values) {
+                if (value > cutoff) keepAtCutoff--;
+            }
+        }
+        for (int i = 0; i < values.length; i++) {
+            kept[i] = values[i] > cutoff || (values[i] == cutoff && keepAtCutoff-- > 0);
+        }
+        return kept;
+    }
+}
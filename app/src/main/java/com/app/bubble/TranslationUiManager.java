@@ -88,6 +88,8 @@ public class TranslationUiManager {
             @Override
             public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
                 sourceLangCode = LanguageUtils.getCode(position);
+                // What the user types here is in the source language: predict in it
+                PredictionEngine.setActiveLanguage(sourceLangCode);
             }
             @Override public void onNothingSelected(AdapterView<?> parent) {}
         });
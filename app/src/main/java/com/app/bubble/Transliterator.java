@@ -0,0 +1,364 @@
+package com.app.bubble;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Types an Indic script on the Latin keyboard: "ente" becomes "എന്റെ" as it is typed.
+ *
+ * A scheme maps Latin key sequences ("k", "th", "nt"...) to native letters, each with ranked
+ * alternatives ("t" is usually ട, sometimes റ്റ or ത). It is compiled once into a trie.
+ * A Composition follows the word being typed: every key adds one column holding the best readings
+ * (a beam of BEAM_WIDTH) of the Latin typed so far, built from the columns up to the longest key
+ * sequence back. So a key costs the same whatever the word length, and Backspace drops a column.
+ * Consonants are joined with a virama, take vowel signs, and end a word as a chillu when they have one.
+ *
+ * Only Malayalam has a scheme so far. Immutable once built; Compositions are not thread-safe.
+ */
+public class Transliterator {
+
+    private static final char VIRAMA = '്';
+    private static final int BEAM_WIDTH = 8;
+    // Every key sequence costs this much, so "th" (ത) beats "t" + "h" (ട്ഹ)
+    private static final int UNIT_COST = 2;
+
+    private static volatile Transliterator malayalam;
+
+    /**
+     * One reading of a key sequence: a consonant, or a vowel (independent letter and sign).
+     */
+    private static final class Option {
+        final boolean vowel;
+        final String letter;
+        final String sign;   // Vowels: form after a consonant
+        final String chillu; // Consonants: form at the end of a word, null if none
+        final int cost;      // Rank among the readings of the same keys
+
+        Option(boolean vowel, String letter, String sign, String chillu, int cost) {
+            this.vowel = vowel;
+            this.letter = letter;
+            this.sign = sign;
+            this.chillu = chillu;
+            this.cost = cost;
+        }
+    }
+
+    private static final class Node {
+        char[] keys = new char[0];
+        Node[] children = new Node[0];
+        List<Option> options; // Readings of the keys leading here, best first; null if none
+
+        Node child(char c) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == c) return children[i];
+            }
+            return null;
+        }
+    }
+
+    /**
+     * A reading of the keys typed so far. The last consonant stays pending until the next key
+     * tells whether it takes a vowel sign, a virama or a word-final form.
+     */
+    private static final class Reading {
+        final String text;
+        final Option pending;
+        final int cost;
+
+        Reading(String text, Option pending, int cost) {
+            this.text = text;
+            this.pending = pending;
+            this.cost = cost;
+        }
+    }
+
+    private final Node root = new Node();
+    private final String language;
+    private int longestKeys = 0;
+
+    private Transliterator(String language) {
+        this.language = language;
+    }
+
+    /**
+     * Transliterator into a language (LanguageUtils code), or null if it has no scheme.
+     */
+    public static Transliterator forLanguage(String language) {
+        if (!"ml".equals(language)) return null;
+        if (malayalam == null) {
+            synchronized (Transliterator.class) {
+                if (malayalam == null) malayalam = buildMalayalam();
+            }
+        }
+        return malayalam;
+    }
+
+    public String getLanguage() {
+        return language;
+    }
+
+    /**
+     * Starts following a new word.
+     */
+    public Composition compose() {
+        return new Composition();
+    }
+
+    /**
+     * The Latin of the word being typed and its readings, one key at a time.
+     */
+    public final class Composition {
+
+        private final StringBuilder latin = new StringBuilder();
+        // columns.get(i): best readings of the first i keys
+        private final List<List<Reading>> columns = new ArrayList<>();
+
+        private Composition() {
+            List<Reading> start = new ArrayList<>(1);
+            start.add(new Reading("", null, 0));
+            columns.add(start);
+        }
+
+        public void append(char c) {
+            latin.append(c);
+            int end = latin.length();
+            List<Reading> column = new ArrayList<>(BEAM_WIDTH);
+            for (int length = 1; length <= Math.min(longestKeys, end); length++) {
+                Node node = find(latin, end - length, end);
+                if (node == null || node.options == null) continue;
+                for (Reading reading : columns.get(end - length)) {
+                    for (Option option : node.options) {
+                        offer(column, extend(reading, option));
+                    }
+                }
+            }
+            columns.add(column);
+        }
+
+        /**
+         * Drops the last key. Returns false if there was none.
+         */
+        public boolean backspace() {
+            if (latin.length() == 0) return false;
+            latin.setLength(latin.length() - 1);
+            columns.remove(columns.size() - 1);
+            return true;
+        }
+
+        public void clear() {
+            latin.setLength(0);
+            while (columns.size() > 1) columns.remove(columns.size() - 1);
+        }
+
+        public boolean isEmpty() {
+            return latin.length() == 0;
+        }
+
+        public String getLatin() {
+            return latin.toString();
+        }
+
+        /**
+         * Up to 'limit' native spellings of the whole word, best first. Empty if no reading covers
+         * every key (e.g. a digit was typed).
+         */
+        public List<String> getCandidates(int limit) {
+            List<Reading> finished = new ArrayList<>(BEAM_WIDTH);
+            for (Reading reading : columns.get(columns.size() - 1)) {
+                Option last = reading.pending;
+                if (last == null) {
+                    offer(finished, reading);
+                } else if (last.chillu != null) {
+                    // "avan": അവൻ first, then അവന്, then അവന
+                    offer(finished, new Reading(reading.text + last.chillu, null, reading.cost));
+                    offer(finished, new Reading(reading.text + last.letter + VIRAMA, null, reading.cost + 1));
+                    offer(finished, new Reading(reading.text + last.letter, null, reading.cost + 1));
+                } else {
+                    offer(finished, new Reading(reading.text + last.letter + VIRAMA, null, reading.cost));
+                    offer(finished, new Reading(reading.text + last.letter, null, reading.cost + 1));
+                }
+            }
+
+            List<String> words = new ArrayList<>(Math.min(limit, finished.size()));
+            for (int i = 0; i < finished.size() && words.size() < limit; i++) {
+                words.add(finished.get(i).text);
+            }
+            return words;
+        }
+    }
+
+    /**
+     * Node reached by the keys latin[from, to), trying each key as typed and then in lower case
+     * (so caps lock still types). Null if no key sequence starts that way.
+     */
+    private Node find(CharSequence latin, int from, int to) {
+        Node node = root;
+        for (int i = from; i < to && node != null; i++) {
+            char c = latin.charAt(i);
+            Node next = node.child(c);
+            if (next == null) next = node.child(Character.toLowerCase(c));
+            node = next;
+        }
+        return node;
+    }
+
+    private static Reading extend(Reading reading, Option option) {
+        int cost = reading.cost + option.cost + UNIT_COST;
+        Option pending = reading.pending;
+        if (option.vowel) {
+            String text = pending == null
+                    ? reading.text + option.letter
+                    : reading.text + pending.letter + option.sign;
+            return new Reading(text, null, cost);
+        }
+        String text = pending == null ? reading.text : reading.text + pending.letter + VIRAMA;
+        return new Reading(text, option, cost);
+    }
+
+    /**
+     * Adds a reading to a beam kept sorted by cost, unless the same reading is already there
+     * for less or the beam is full of better ones.
+     */
+    private static void offer(List<Reading> beam, Reading reading) {
+        for (int i = 0; i < beam.size(); i++) {
+            Reading other = beam.get(i);
+            if (other.pending == reading.pending && other.text.equals(reading.text)) {
+                if (other.cost <= reading.cost) return;
+                beam.remove(i);
+                break;
+            }
+        }
+        int at = beam.size();
+        while (at > 0 && beam.get(at - 1).cost > reading.cost) at--;
+        if (at >= BEAM_WIDTH) return;
+        beam.add(at, reading);
+        if (beam.size() > BEAM_WIDTH) beam.remove(BEAM_WIDTH);
+    }
+
+    // --- Scheme ---
+
+    /**
+     * Adds a reading for each space-separated key sequence; readings added earlier rank higher.
+     */
+    private void add(String keySequences, boolean vowel, String letter, String sign, String chillu) {
+        for (String keys : keySequences.split(" ")) {
+            Node node = root;
+            for (int i = 0; i < keys.length(); i++) {
+                char c = keys.charAt(i);
+                Node next = node.child(c);
+                if (next == null) {
+                    next = new Node();
+                    int n = node.keys.length;
+                    char[] grownKeys = new char[n + 1];
+                    Node[] grownChildren = new Node[n + 1];
+                    System.arraycopy(node.keys, 0, grownKeys, 0, n);
+                    System.arraycopy(node.children, 0, grownChildren, 0, n);
+                    grownKeys[n] = c;
+                    grownChildren[n] = next;
+                    node.keys = grownKeys;
+                    node.children = grownChildren;
+                }
+                node = next;
+            }
+            if (node.options == null) node.options = new ArrayList<>(2);
+            node.options.add(new Option(vowel, letter, sign, chillu, node.options.size()));
+            longestKeys = Math.max(longestKeys, keys.length());
+        }
+    }
+
+    private void vowel(String keys, String letter, String sign) {
+        add(keys, true, letter, sign, null);
+    }
+
+    private void consonant(String keys, String letter) {
+        add(keys, false, letter, null, null);
+    }
+
+    private void consonant(String keys, String letter, String chillu) {
+        add(keys, false, letter, null, chillu);
+    }
+
+    /**
+     * Malayalam, close to the Mozhi scheme people already type in chats.
+     * Upper case keys pick the less common letter (T = ട, L = ള...); lower case ones rank it second.
+     */
+    private static Transliterator buildMalayalam() {
+        Transliterator t = new Transliterator("ml");
+
+        t.vowel("a", "അ", "");
+        t.vowel("aa A", "ആ", "ാ");
+        t.vowel("i", "ഇ", "ി");
+        t.vowel("ii ee I", "ഈ", "ീ");
+        t.vowel("u", "ഉ", "ു");
+        t.vowel("uu oo U", "ഊ", "ൂ");
+        t.vowel("R", "ഋ", "ൃ");
+        t.vowel("e", "എ", "െ");
+        t.vowel("E ae e", "ഏ", "േ");
+        t.vowel("ai", "ഐ", "ൈ");
+        t.vowel("o", "ഒ", "ൊ");
+        t.vowel("O o oo", "ഓ", "ോ");
+        t.vowel("au ou", "ഔ", "ൌ");
+
+        t.consonant("k c", "ക");
+        t.consonant("kh", "ഖ");
+        t.consonant("g", "ഗ");
+        t.consonant("gh", "ഘ");
+        t.consonant("ng", "ങ്ങ");
+        t.consonant("ng", "ങ");
+        t.consonant("nk", "ങ്ക");
+        t.consonant("ch c", "ച");
+        t.consonant("chh Ch", "ഛ");
+        t.consonant("chh", "ച്ച");
+        t.consonant("j", "ജ");
+        t.consonant("jh", "ഝ");
+        t.consonant("nj", "ഞ");
+        t.consonant("nj", "ഞ്ഞ");
+        t.consonant("nch", "ഞ്ച");
+        t.consonant("x", "ക്സ");
+        t.consonant("ksh x", "ക്ഷ");
+
+        t.consonant("t T", "ട");
+        t.consonant("t", "റ്റ");
+        t.consonant("t", "ത");
+        t.consonant("tt", "ട്ട");
+        t.consonant("tt", "റ്റ");
+        t.consonant("Th", "ഠ");
+        t.consonant("th", "ത");
+        t.consonant("th", "ഥ");
+        t.consonant("d", "ദ");
+        t.consonant("d D", "ഡ");
+        t.consonant("dh", "ധ");
+        t.consonant("dh Dh", "ഢ");
+        t.consonant("n", "ന", "ൻ");
+        t.consonant("N n", "ണ", "ൺ");
+        t.consonant("nt", "ന്റ");
+        t.consonant("nt", "ന്ത");
+        t.consonant("nt", "ണ്ട");
+        t.consonant("nth", "ന്ത");
+        t.consonant("nd", "ന്ദ");
+        t.consonant("nd", "ണ്ട");
+        t.consonant("nn", "ന്ന");
+        t.consonant("nn NN", "ണ്ണ");
+
+        t.consonant("p", "പ");
+        t.consonant("ph f", "ഫ");
+        t.consonant("b", "ബ");
+        t.consonant("bh", "ഭ");
+        t.consonant("m", "മ", "ം");
+        t.consonant("mb", "മ്പ");
+        t.consonant("mb", "മ്ബ");
+
+        t.consonant("y", "യ");
+        t.consonant("r", "ര", "ർ");
+        t.consonant("r rr R", "റ", "ർ");
+        t.consonant("l", "ല", "ൽ");
+        t.consonant("L l", "ള", "ൾ");
+        t.consonant("v w", "വ");
+        t.consonant("sh S", "ശ");
+        t.consonant("sh Sh", "ഷ");
+        t.consonant("s", "സ");
+        t.consonant("h", "ഹ");
+        t.consonant("zh z", "ഴ");
+        return t;
+    }
+}
@@ -0,0 +1,53 @@
+package com.app.bubble;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps every case-folded word the model has seen to a small int ID, once.
+ * N-gram tables then store packed IDs instead of Strings. IDs are never reused or removed,
+ * so an ID found in any model version built on this interner always resolves. Trimming the
+ * vocabulary starts a new interner; each model version keeps the one its IDs refer to.
+ * Lookups are lock-free; intern() is called by the single model writer.
+ */
+public class WordInterner {
+
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] words = new String[256];
+    private int count;
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * ID of a word, or -1 if it was never interned.
+     */
+    public int idOf(String word) {
+        Integer id = ids.get(word);
+        return id == null ? -1 : id;
+    }
+
+    public String wordOf(int id) {
+        return words[id];
+    }
+
+    /**
+     * Returns the ID of a word, assigning the next free one if it is new.
+     */
+    public synchronized int intern(String word) {
+        Integer existing = ids.get(word);
+        if (existing != null) return existing;
+
+        String[] table = words;
+        if (count == table.length) {
+            table = Arrays.copyOf(table, table.length * 2);
+            words = table;
+        }
+        int id = count++;
+        table[id] = word;
+        // Published after the array slot, so whoever sees the ID also sees the word
+        ids.put(word, id);
+        return id;
+    }
+}
@@ -0,0 +1,135 @@
+package com.app.bubble;
+
+import java.util.List;
+
+/**
+ * Single-pass word tokenizer for bulk learning (clipboard, imports).
+ * Walks the text once by code point and hands out tokens a chunk at a time, so any amount of
+ * text is processed with one reusable buffer plus the token Strings themselves.
+ *
+ * A word is a run of letters and digits in any script, including the combining marks of
+ * Indic scripts (vowel signs, virama) and ZWJ / ZWNJ inside the word, as used by Malayalam
+ * chillu and conjunct forms (a trailing virama + ZWJ is kept). An apostrophe between letters stays part of the word (normalized
+ * to '). Everything else separates words. Runs longer than MAX_TOKEN_LENGTH (URLs, hashes)
+ * are skipped, as are single-char words.
+ * Optionally a BREAK token marks where word pairs must not be formed: sentence ends, line
+ * breaks and skipped tokens.
+ */
+public class WordTokenizer {
+
+    public static final int MIN_TOKEN_LENGTH = 2;
+    public static final int MAX_TOKEN_LENGTH = 48;
+
+    // Emitted between words that do not form a pair (only if requested)
+    public static final String BREAK = "";
+
+    private static final char ZWNJ = '\u200C';
+    private static final char ZWJ = '\u200D';
+    private static final char RIGHT_QUOTE = '\u2019';
+
+    private final CharSequence text;
+    private final boolean markBreaks;
+    private final StringBuilder token = new StringBuilder(MAX_TOKEN_LENGTH);
+    private int position;
+    private boolean atBreak = true;
+
+    public WordTokenizer(CharSequence text) {
+        this(text, false);
+    }
+
+    public WordTokenizer(CharSequence text, boolean markBreaks) {
+        this.text = text != null ? text : "";
+        this.markBreaks = markBreaks;
+    }
+
+    public boolean hasMore() {
+        return position < text.length();
+    }
+
+    /**
+     * Appends up to 'max' words to 'out' and returns how many were added.
+     * Returns 0 only when the text is exhausted. BREAK tokens are not counted.
+     */
+    public int next(List<String> out, int max) {
+        int added = 0;
+        int length = text.length();
+        boolean tooLong = false;
+
+        while (added < max && position < length) {
+            int cp = Character.codePointAt(text, position);
+            position += Character.charCount(cp);
+
+            if (isWordPart(cp, token.length() > 0)) {
+                if (token.length() + Character.charCount(cp) > MAX_TOKEN_LENGTH) {
+                    tooLong = true;
+                } else if (!tooLong) {
+                    token.appendCodePoint(cp);
+                }
+                continue;
+            }
+
+            if ((cp == '\'' || cp == RIGHT_QUOTE) && token.length() > 0 && !tooLong && nextIsLetter()) {
+                token.append('\'');
+                continue;
+            }
+
+            if (emit(out, tooLong)) added++;
+            if (isSentenceEnd(cp)) addBreak(out);
+            tooLong = false;
+        }
+
+        if (position >= length && emit(out, tooLong)) added++;
+        return added;
+    }
+
+    /**
+     * Moves the buffered word to 'out' if it is a valid token, and clears the buffer.
+     */
+    private boolean emit(List<String> out, boolean tooLong) {
+        if (token.length() == 0) return false;
+        boolean valid = !tooLong && token.codePointCount(0, token.length()) >= MIN_TOKEN_LENGTH;
+        if (valid) {
+            out.add(token.toString());
+            atBreak = false;
+        } else {
+            addBreak(out);
+        }
+        token.setLength(0);
+        return valid;
+    }
+
+    private void addBreak(List<String> out) {
+        if (!markBreaks || atBreak) return;
+        out.add(BREAK);
+        atBreak = true;
+    }
+
+    private boolean nextIsLetter() {
+        if (position >= text.length()) return false;
+        return Character.isLetter(Character.codePointAt(text, position));
+    }
+
+    private static boolean isSentenceEnd(int cp) {
+        switch (cp) {
+            case '.': case '!': case '?': case ';': case '\n':
+            case '\u0964': case '\u0965': // Danda, double danda
+            case '\u3002':                 // Ideographic full stop
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Letters and digits start a word; marks and joiners only continue one.
+     */
+    private static boolean isWordPart(int cp, boolean inWord) {
+        if (Character.isLetterOrDigit(cp)) return true;
+        if (!inWord) return false;
+        if (cp == ZWJ || cp == ZWNJ) return true;
+        int type = Character.getType(cp);
+        return type == Character.NON_SPACING_MARK
+                || type == Character.COMBINING_SPACING_MARK
+                || type == Character.ENCLOSING_MARK;
+    }
+}
@@ -0,0 +1,408 @@
+package com.app.bubble;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Compressed prefix trie over the typing vocabulary.
+ * Keys are case-folded, and every node with more than TOP_K words below it keeps its
+ * most used words cached, so a prefix lookup only walks the prefix and reads the cache.
+ * A published trie is never modified: an Editor builds the next version by copying only the
+ * nodes on the paths it changes, so any thread may read while the writer works.
+ */
+public class WordTrie {
+
+    // One more than the candidate strip shows, so skipping the exact match still fills the row
+    public static final int TOP_K = 6;
+
+    public interface WordVisitor {
+        void visit(String word, int count);
+    }
+
+    private static final Node[] NO_CHILDREN = new Node[0];
+
+    private static final Comparator<Node> BY_USAGE = new Comparator<Node>() {
+        @Override
+        public int compare(Node a, Node b) {
+            return b.count < a.count ? -1 : (b.count == a.count ? 0 : 1);
+        }
+    };
+
+    static final class Node {
+        String label = "";               // Case-folded edge fragment leading into this node
+        Node[] children = NO_CHILDREN;   // Sorted by the first char of their label
+        String word;                     // Display form, null when no word ends here
+        int count;                       // Usage count of 'word'
+        int size;                        // Number of words in this subtree
+        Node[] top;                      // Most used words below, only kept when size > TOP_K
+        Object edit;                     // Version being edited that owns this node
+    }
+
+    /**
+     * Builds new versions of a trie. A node is copied the first time a version touches it and
+     * modified in place afterwards, so a batch of words copies each node on its paths only once.
+     * Not thread-safe: use from the single writer.
+     */
+    public static final class Editor {
+
+        private Node root;
+        private Object version = new Object();
+
+        private Editor(Node root) {
+            this.root = root;
+        }
+
+        /**
+         * Records uses of a word. Returns true if the word was not indexed before.
+         */
+        public boolean add(String word, int uses) {
+            if (word == null) return false;
+            String key = word.toLowerCase();
+            if (key.isEmpty()) return false;
+
+            List<Node> path = new ArrayList<>();
+            root = editable(root, path);
+            Node node = root;
+            path.add(node);
+            int pos = 0;
+
+            while (pos < key.length()) {
+                int idx = childIndex(node, key.charAt(pos));
+                if (idx < 0) {
+                    Node leaf = new Node();
+                    leaf.edit = version;
+                    leaf.label = key.substring(pos);
+                    insertChild(node, -(idx + 1), leaf);
+                    node = leaf;
+                    path.add(node);
+                    break;
+                }
+
+                Node child = editable(node.children[idx], path);
+                node.children[idx] = child;
+                int common = commonPrefix(child.label, key, pos);
+                if (common < child.label.length()) {
+                    // Split the edge so the key can end or branch in the middle of it
+                    Node mid = new Node();
+                    mid.edit = version;
+                    mid.label = child.label.substring(0, common);
+                    mid.children = new Node[] { child };
+                    mid.size = child.size;
+                    mid.top = child.top == null ? null : child.top.clone();
+                    child.label = child.label.substring(common);
+                    node.children[idx] = mid;
+                    child = mid;
+                }
+                node = child;
+                path.add(node);
+                pos += common;
+            }
+
+            boolean isNew = node.word == null;
+            node.word = word;
+            node.count += uses;
+            if (isNew) {
+                for (Node n : path) n.size++;
+            }
+            for (Node n : path) {
+                updateTop(n, node);
+            }
+            return isNew;
+        }
+
+        /**
+         * Freezes the current state into an immutable trie. Later edits start a new version.
+         */
+        public WordTrie publish() {
+            WordTrie published = new WordTrie(root);
+            version = new Object();
+            return published;
+        }
+
+        /**
+         * Returns a copy of 'node' owned by this version, unless it already is.
+         * 'path' holds its (already editable) ancestors, whose caches must point at the copy.
+         */
+        private Node editable(Node node, List<Node> path) {
+            if (node.edit == version) return node;
+
+            Node copy = new Node();
+            copy.edit = version;
+            copy.label = node.label;
+            copy.children = node.children.length == 0 ? NO_CHILDREN : node.children.clone();
+            copy.word = node.word;
+            copy.count = node.count;
+            copy.size = node.size;
+            copy.top = node.top == null ? null : node.top.clone();
+
+            if (node.word != null) {
+                replace(copy.top, node, copy);
+                for (Node ancestor : path) replace(ancestor.top, node, copy);
+            }
+            return copy;
+        }
+
+        private static void replace(Node[] top, Node from, Node to) {
+            if (top == null) return;
+            int i = indexOf(top, from);
+            if (i >= 0) top[i] = to;
+        }
+    }
+
+    /**
+     * Position in this trie after some case-folded prefix, advanced one char at a time.
+     * Immutable, so a caller can keep one per typed char and step back for free.
+     */
+    public static final class Cursor {
+
+        private final Node node;
+        private final int matched; // Chars of node.label consumed so far
+
+        private Cursor(Node node, int matched) {
+            this.node = node;
+            this.matched = matched;
+        }
+
+        /**
+         * Cursor after one more (case-folded) char, or null if no word continues that way.
+         */
+        public Cursor advance(char c) {
+            if (matched < node.label.length()) {
+                return node.label.charAt(matched) == c ? new Cursor(node, matched + 1) : null;
+            }
+            int idx = childIndex(node, c);
+            return idx < 0 ? null : new Cursor(node.children[idx], 1);
+        }
+
+        /**
+         * Most used words starting with the prefix, like WordTrie.topWords().
+         */
+        public List<String> topWords(int limit) {
+            return ranked(node, limit);
+        }
+
+        /**
+         * Display form of the word spelled by the prefix itself, null if it is not a word.
+         */
+        public String word() {
+            return matched == node.label.length() ? node.word : null;
+        }
+
+        /**
+         * Usage count of word(), 0 if the prefix is not a word.
+         */
+        public int count() {
+            return matched == node.label.length() && node.word != null ? node.count : 0;
+        }
+    }
+
+    private final Node root;
+
+    public WordTrie() {
+        this(new Node());
+    }
+
+    private WordTrie(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * Starts building newer versions of this trie. The trie itself never changes.
+     */
+    public Editor edit() {
+        return new Editor(root);
+    }
+
+    public int size() {
+        return root.size;
+    }
+
+    /**
+     * Usage count of a word, 0 if it is unknown.
+     */
+    public int getCount(String word) {
+        if (word == null) return 0;
+        Node node = findExact(word.toLowerCase());
+        return node == null ? 0 : node.count;
+    }
+
+    /**
+     * Display form stored for a word, matched case-insensitively. Null if unknown.
+     */
+    public String getWord(String word) {
+        if (word == null) return null;
+        Node node = findExact(word.toLowerCase());
+        return node == null ? null : node.word;
+    }
+
+    public boolean contains(String word) {
+        return getCount(word) > 0;
+    }
+
+    /**
+     * Returns up to 'limit' words starting with the prefix, most used first.
+     */
+    public List<String> topWords(String prefix, int limit) {
+        if (prefix == null) return new ArrayList<>();
+        Node node = find(prefix.toLowerCase());
+        if (node == null) return new ArrayList<>();
+        return ranked(node, limit);
+    }
+
+    /**
+     * Cursor at the empty prefix, for incremental lookups.
+     */
+    public Cursor cursor() {
+        return new Cursor(root, 0);
+    }
+
+    private static List<String> ranked(Node node, int limit) {
+        List<String> results = new ArrayList<>();
+        Node[] ranked = node.top;
+        if (ranked == null) {
+            ranked = collectRanked(node);
+        }
+        for (int i = 0; i < ranked.length && results.size() < limit; i++) {
+            results.add(ranked[i].word);
+        }
+        return results;
+    }
+
+    /**
+     * Visits every indexed word with its usage count.
+     */
+    public void forEach(WordVisitor visitor) {
+        visit(root, visitor);
+    }
+
+    private static void visit(Node node, WordVisitor visitor) {
+        if (node.word != null) visitor.visit(node.word, node.count);
+        for (Node child : node.children) {
+            visit(child, visitor);
+        }
+    }
+
+    // --- Internals ---
+
+    /**
+     * Finds the node whose subtree holds exactly the keys starting with 'key'.
+     * The key may end in the middle of an edge, in which case that edge's node is returned.
+     */
+    private Node find(String key) {
+        Node node = root;
+        int pos = 0;
+        while (pos < key.length()) {
+            int idx = childIndex(node, key.charAt(pos));
+            if (idx < 0) return null;
+            Node child = node.children[idx];
+            int common = commonPrefix(child.label, key, pos);
+            if (pos + common == key.length()) return child;
+            if (common < child.label.length()) return null;
+            node = child;
+            pos += common;
+        }
+        return node;
+    }
+
+    private Node findExact(String key) {
+        Node node = root;
+        int pos = 0;
+        while (pos < key.length()) {
+            int idx = childIndex(node, key.charAt(pos));
+            if (idx < 0) return null;
+            Node child = node.children[idx];
+            if (!key.startsWith(child.label, pos)) return null;
+            node = child;
+            pos += child.label.length();
+        }
+        return node.word != null ? node : null;
+    }
+
+    private static void updateTop(Node n, Node changed) {
+        if (n.size <= TOP_K) {
+            n.top = null;
+            return;
+        }
+        if (n.top == null) {
+            // Just crossed the threshold: the subtree is still tiny, rank it directly
+            Node[] ranked = collectRanked(n);
+            n.top = ranked.length > TOP_K ? Arrays.copyOf(ranked, TOP_K) : ranked;
+            return;
+        }
+
+        Node[] top = n.top;
+        int i = indexOf(top, changed);
+        if (i < 0) {
+            if (top.length < TOP_K) {
+                top = Arrays.copyOf(top, top.length + 1);
+                n.top = top;
+            } else if (changed.count <= top[top.length - 1].count) {
+                return;
+            }
+            i = top.length - 1;
+            top[i] = changed;
+        }
+        // Counts only grow, so the changed entry can only move up
+        while (i > 0 && top[i - 1].count < top[i].count) {
+            Node tmp = top[i - 1];
+            top[i - 1] = top[i];
+            top[i] = tmp;
+            i--;
+        }
+    }
+
+    private static Node[] collectRanked(Node node) {
+        List<Node> words = new ArrayList<>();
+        collect(node, words);
+        Collections.sort(words, BY_USAGE);
+        return words.toArray(new Node[0]);
+    }
+
+    private static void collect(Node node, List<Node> out) {
+        if (node.word != null) out.add(node);
+        for (Node child : node.children) {
+            collect(child, out);
+        }
+    }
+
+    private static int indexOf(Node[] nodes, Node target) {
+        for (int i = 0; i < nodes.length; i++) {
+            if (nodes[i] == target) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Binary search by first label char. Returns the index, or -(insertionPoint + 1).
+     */
+    private static int childIndex(Node node, char c) {
+        int lo = 0;
+        int hi = node.children.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            char m = node.children[mid].label.charAt(0);
+            if (m < c) lo = mid + 1;
+            else if (m > c) hi = mid - 1;
+            else return mid;
+        }
+        return -(lo + 1);
+    }
+
+    private static void insertChild(Node parent, int at, Node child) {
+        Node[] grown = new Node[parent.children.length + 1];
+        System.arraycopy(parent.children, 0, grown, 0, at);
+        grown[at] = child;
+        System.arraycopy(parent.children, at, grown, at + 1, parent.children.length - at);
+        parent.children = grown;
+    }
+
+    private static int commonPrefix(String label, String key, int from) {
+        int max = Math.min(label.length(), key.length() - from);
+        int i = 0;
+        while (i < max && label.charAt(i) == key.charAt(from + i)) i++;
+        return i;
+    }
+}